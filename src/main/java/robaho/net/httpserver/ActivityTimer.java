@@ -1,5 +1,6 @@
 package robaho.net.httpserver;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.TextStyle;
@@ -8,9 +9,12 @@ import java.util.TimerTask;
 
 class ActivityTimer {
     private static volatile long now = System.currentTimeMillis();
-    private static volatile String dateAndTime = formatDate();
+    private static volatile DateAndTime dateAndTime = formatDate();
 
-    private static String formatDate() {
+    /** the formatted date and its encoding, updated together */
+    private record DateAndTime(String value, byte[] bytes) {}
+
+    private static DateAndTime formatDate() {
         var now = Instant.now();
         var datetime = now.atOffset(ZoneOffset.UTC);
         StringBuilder sb = new StringBuilder(32);
@@ -36,7 +40,8 @@ class ActivityTimer {
         if(second<10) sb.append("0");
         sb.append(second);
         sb.append(" GMT");
-        return sb.toString();
+        String value = sb.toString();
+        return new DateAndTime(value, value.getBytes(StandardCharsets.ISO_8859_1));
     }
 
     public static long now() {
@@ -47,7 +52,15 @@ class ActivityTimer {
      * is OK to cache since the resolution is only seconds, and we will update more often than that
      */
     public static String dateAndTime() {
-        return dateAndTime;
+        return dateAndTime.value;
+    }
+
+    /**
+     * @return the ISO-8859-1 bytes of the value if it is the current date and time, or null
+     */
+    static byte[] dateAndTimeBytes(String value) {
+        DateAndTime current = dateAndTime;
+        return current.value == value ? current.bytes : null;
     }
 
     static void updateNow() {
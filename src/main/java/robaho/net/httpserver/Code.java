@@ -58,6 +58,7 @@ public class Code {
   public static final int HTTP_ENTITY_TOO_LARGE = 413;
   public static final int HTTP_REQ_TOO_LONG = 414;
   public static final int HTTP_UNSUPPORTED_TYPE = 415;
+  public static final int HTTP_HEADER_FIELDS_TOO_LARGE = 431;
   public static final int HTTP_INTERNAL_ERROR = 500;
   public static final int HTTP_NOT_IMPLEMENTED = 501;
   public static final int HTTP_BAD_GATEWAY = 502;
@@ -130,6 +131,8 @@ public class Code {
         return " Request-URI Too Large";
       case HTTP_UNSUPPORTED_TYPE:
         return " Unsupported Media Type";
+      case HTTP_HEADER_FIELDS_TOO_LARGE:
+        return " Request Header Fields Too Large";
       case HTTP_INTERNAL_ERROR:
         return " Internal Server Error";
       case HTTP_NOT_IMPLEMENTED:
@@ -26,21 +26,108 @@
 package robaho.net.httpserver;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * the contexts are stored in an immutable radix tree per protocol, so a request path is
+ * matched to the context with the longest prefix in a single walk of the path. Adding or
+ * removing a context publishes a new tree, which shares the unchanged nodes with the old one.
+ */
 class ContextList {
 
-    private final List<HttpContextImpl> list = new CopyOnWriteArrayList<>();
-    private final Map<CacheKey,HttpContextImpl> cache = new ConcurrentHashMap<>();
-    private record CacheKey(String protocol,String path){}
+    private record Routes(Map<String, Node> roots, int size) {}
+
+    private final AtomicReference<Routes> routes = new AtomicReference<>(new Routes(Map.of(), 0));
+
+    /**
+     * a node of the radix tree. The label is the part of the path between the parent and this
+     * node, and children are sorted by the first character of their label, which is unique.
+     */
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Node EMPTY = new Node("", null, NO_CHILDREN);
+
+        final String label;
+        final HttpContextImpl ctx;
+        final char[] first;
+        final Node[] children;
+
+        Node(String label, HttpContextImpl ctx, Node[] children) {
+            this.label = label;
+            this.ctx = ctx;
+            this.children = children;
+            this.first = new char[children.length];
+            for (int i = 0; i < children.length; i++) {
+                first[i] = children[i].label.charAt(0);
+            }
+        }
+
+        int child(char c) {
+            return Arrays.binarySearch(first, c);
+        }
+
+        Node withLabel(String label) {
+            return new Node(label, ctx, children);
+        }
+
+        Node withContext(HttpContextImpl ctx) {
+            return new Node(label, ctx, children);
+        }
 
-    public synchronized void add(HttpContextImpl ctx) {
+        Node withChild(int index, Node child) {
+            Node[] copy;
+            if (index >= 0) {
+                copy = children.clone();
+                copy[index] = child;
+            } else {
+                int insert = -index - 1;
+                copy = new Node[children.length + 1];
+                System.arraycopy(children, 0, copy, 0, insert);
+                copy[insert] = child;
+                System.arraycopy(children, insert, copy, insert + 1, children.length - insert);
+            }
+            return new Node(label, ctx, copy);
+        }
+
+        Node withoutChild(int index) {
+            Node[] copy = new Node[children.length - 1];
+            System.arraycopy(children, 0, copy, 0, index);
+            System.arraycopy(children, index + 1, copy, index, copy.length - index);
+            return new Node(label, ctx, copy);
+        }
+
+        /**
+         * @return this node without a context, merged with its child if it only has one, or null
+         * if it is no longer needed
+         */
+        Node compact() {
+            if (ctx != null) {
+                return this;
+            }
+            if (children.length == 0) {
+                return null;
+            }
+            if (children.length == 1 && !label.isEmpty()) {
+                Node child = children[0];
+                return new Node(label + child.label, child.ctx, child.children);
+            }
+            return this;
+        }
+    }
+
+    public void add(HttpContextImpl ctx) {
         assert ctx.getPath() != null;
-        if (contains(ctx)) {
-            throw new IllegalArgumentException("cannot add context to list");
+        while (true) {
+            Routes current = routes.get();
+            Node root = current.roots().getOrDefault(ctx.getProtocol(), Node.EMPTY);
+            Node updated = insert(root, ctx.getPath(), 0, ctx);
+            if (updated == null) {
+                throw new IllegalArgumentException("cannot add context to list");
+            }
+            if (routes.compareAndSet(current, new Routes(with(current.roots(), ctx.getProtocol(), updated), current.size() + 1))) {
+                return;
+            }
         }
-        list.add(ctx);
     }
 
     boolean contains(HttpContextImpl ctx) {
@@ -48,7 +135,7 @@ class ContextList {
     }
 
     public int size() {
-        return list.size();
+        return routes.get().size();
     }
 
     /*
@@ -56,57 +143,138 @@ class ContextList {
      * Context with longest prefix matches (currently case-sensitive)
      */
     HttpContextImpl findContext(String protocol, String path) {
-        CacheKey key = new CacheKey(protocol,path);
-        var ctx = cache.get(key);
-        if(ctx!=null) return ctx;
-        ctx = findContext(protocol, path, false);
-        // only cache exact matches, otherwise path parameters will 
-        // explode memory
-        if(ctx!=null && ctx.getPath().equals(path)) {
-            cache.put(key,ctx);
-        }
-        return ctx;
+        return findContext(protocol, path, false);
     }
 
     HttpContextImpl findContext(String protocol, String path, boolean exact) {
-        String _protocol = protocol.toLowerCase(Locale.ROOT);
-        String longest = "";
-        HttpContextImpl lc = null;
-        for (HttpContextImpl ctx : list) {
-            if (!ctx.getProtocol().equals(_protocol)) {
-                continue;
+        Node node = routes.get().roots().get(protocol.toLowerCase(Locale.ROOT));
+        if (node == null) {
+            return null;
+        }
+        HttpContextImpl longest = null;
+        int pos = 0;
+        while (true) {
+            if (node.ctx != null && (!exact || pos == path.length())) {
+                longest = node.ctx;
             }
-            String cpath = ctx.getPath();
-            if (exact && !cpath.equals(path)) {
-                continue;
-            } else if (!exact && !path.startsWith(cpath)) {
-                continue;
+            if (pos == path.length()) {
+                return exact ? node.ctx : longest;
             }
-            if (cpath.length() > longest.length()) {
-                longest = cpath;
-                lc = ctx;
+            int index = node.child(path.charAt(pos));
+            if (index < 0) {
+                return exact ? null : longest;
             }
+            Node child = node.children[index];
+            if (!path.startsWith(child.label, pos)) {
+                return exact ? null : longest;
+            }
+            pos += child.label.length();
+            node = child;
         }
-        return lc;
     }
 
-    public synchronized void remove(String protocol, String path)
+    public void remove(String protocol, String path)
             throws IllegalArgumentException {
         HttpContextImpl ctx = findContext(protocol, path, true);
         if (ctx == null) {
             throw new IllegalArgumentException("cannot remove element from list");
         }
-        list.remove(ctx);
+        remove(ctx, "cannot remove element from list");
     }
 
-    public synchronized void remove(HttpContextImpl context)
+    public void remove(HttpContextImpl context)
             throws IllegalArgumentException {
-        for (HttpContextImpl ctx : list) {
-            if (ctx.equals(context)) {
-                list.remove(ctx);
+        remove(context, "no such context in list");
+    }
+
+    private void remove(HttpContextImpl context, String error) {
+        while (true) {
+            Routes current = routes.get();
+            Node root = current.roots().get(context.getProtocol());
+            Node updated = root == null ? null : delete(root, context.getPath(), 0, context);
+            if (updated == null) {
+                throw new IllegalArgumentException(error);
+            }
+            if (routes.compareAndSet(current, new Routes(with(current.roots(), context.getProtocol(), updated), current.size() - 1))) {
                 return;
             }
         }
-        throw new IllegalArgumentException("no such context in list");
+    }
+
+    private static Map<String, Node> with(Map<String, Node> roots, String protocol, Node root) {
+        Map<String, Node> copy = new HashMap<>(roots);
+        copy.put(protocol, root);
+        return Map.copyOf(copy);
+    }
+
+    /**
+     * @return the new node with the context added below it, or null if the path is already registered
+     */
+    private static Node insert(Node node, String path, int pos, HttpContextImpl ctx) {
+        if (pos == path.length()) {
+            return node.ctx == null ? node.withContext(ctx) : null;
+        }
+        int index = node.child(path.charAt(pos));
+        if (index < 0) {
+            return node.withChild(index, new Node(path.substring(pos), ctx, Node.NO_CHILDREN));
+        }
+        Node child = node.children[index];
+        String label = child.label;
+        int common = 0;
+        int max = Math.min(label.length(), path.length() - pos);
+        while (common < max && label.charAt(common) == path.charAt(pos + common)) {
+            common++;
+        }
+        Node updated;
+        if (common == label.length()) {
+            updated = insert(child, path, pos + common, ctx);
+            if (updated == null) {
+                return null;
+            }
+        } else {
+            // split the child at the common prefix
+            Node tail = child.withLabel(label.substring(common));
+            Node split = new Node(label.substring(0, common), null, new Node[] { tail });
+            updated = pos + common == path.length()
+                    ? split.withContext(ctx)
+                    : split.withChild(split.child(path.charAt(pos + common)), new Node(path.substring(pos + common), ctx, Node.NO_CHILDREN));
+        }
+        return node.withChild(index, updated);
+    }
+
+    /**
+     * @return the new node with the context removed below it, or null if the context is not registered.
+     * The root is never removed, so an empty tree is returned as Node.EMPTY
+     */
+    private static Node delete(Node node, String path, int pos, HttpContextImpl ctx) {
+        if (pos == path.length()) {
+            if (node.ctx != ctx) {
+                return null;
+            }
+            Node updated = node.withContext(null).compact();
+            return updated == null ? Node.EMPTY : updated;
+        }
+        int index = node.child(path.charAt(pos));
+        if (index < 0) {
+            return null;
+        }
+        Node child = node.children[index];
+        if (!path.startsWith(child.label, pos)) {
+            return null;
+        }
+        Node updated = delete(child, path, pos + child.label.length(), ctx);
+        if (updated == null) {
+            return null;
+        }
+        if (updated == Node.EMPTY) {
+            updated = null;
+        }
+        Node result = updated == null ? node.withoutChild(index) : node.withChild(index, updated);
+        if (node.label.isEmpty()) {
+            // the root keeps its empty label
+            return result;
+        }
+        result = result.compact();
+        return result == null ? Node.EMPTY : result;
     }
 }
@@ -0,0 +1,159 @@
+package robaho.net.httpserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * a mutable view of the parsed request headers which only copies them on the first
+ * mutation. Handlers and filters rarely modify the request headers, so this avoids
+ * copying them for every request, while keeping the parsed headers unchanged for the
+ * server. Until then the value lists and key set are returned unmodifiable, and the
+ * entry and value views copy the headers since their lists may be modified in place.
+ */
+class CopyOnWriteHeaders extends Headers {
+    private Headers headers;
+    private boolean copied;
+
+    CopyOnWriteHeaders(Headers headers) {
+        this.headers = headers;
+    }
+
+    private Headers writable() {
+        if (!copied) {
+            OptimizedHeaders copy = new OptimizedHeaders(Math.max(16, headers.size() * 2));
+            // copy the value lists as they may be mutable
+            headers.forEach((k, v) -> copy.put(k, new ArrayList<>(v)));
+            headers = copy;
+            copied = true;
+        }
+        return headers;
+    }
+
+    @Override
+    public int size() {
+        return headers.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return headers.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return headers.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return headers.containsValue(value);
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        List<String> values = headers.get(key);
+        return copied || values == null ? values : Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public String getFirst(String key) {
+        return headers.getFirst(key);
+    }
+
+    @Override
+    public List<String> put(String key, List<String> value) {
+        return writable().put(key, value);
+    }
+
+    @Override
+    public void add(String key, String value) {
+        writable().add(key, value);
+    }
+
+    @Override
+    public void set(String key, String value) {
+        writable().set(key, value);
+    }
+
+    @Override
+    public List<String> remove(Object key) {
+        return writable().remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends List<String>> t) {
+        Headers writable = writable();
+        t.forEach(writable::put);
+    }
+
+    @Override
+    public void clear() {
+        writable().clear();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super List<String>, ? extends List<String>> function) {
+        Headers writable = writable();
+        writable.keySet().forEach(k -> writable.put(k, function.apply(k, writable.get(k))));
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return copied ? headers.keySet() : Collections.unmodifiableSet(headers.keySet());
+    }
+
+    @Override
+    public Collection<List<String>> values() {
+        return writable().values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<String>>> entrySet() {
+        return writable().entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super List<String>> action) {
+        if (copied) {
+            headers.forEach(action);
+        } else {
+            headers.forEach((k, v) -> action.accept(k, Collections.unmodifiableList(v)));
+        }
+    }
+
+    /** compares the contents as a Map, since the parsed headers may only support identity equality */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Map<?, ?> other) || other.size() != size()) {
+            return false;
+        }
+        boolean[] equal = {true};
+        headers.forEach((k, v) -> equal[0] &= v.equals(other.get(k)));
+        return equal[0];
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hash = {0};
+        headers.forEach((k, v) -> hash[0] += k.hashCode() ^ v.hashCode());
+        return hash[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName()).append(" {");
+        forEach((k, v) -> sb.append(k).append('=').append(v).append(", "));
+        return sb.append('}').toString();
+    }
+}
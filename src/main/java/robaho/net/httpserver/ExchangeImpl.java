@@ -33,8 +33,6 @@ import javax.net.ssl.*;
 import java.util.*;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
@@ -45,7 +43,7 @@ class ExchangeImpl {
     Headers reqHdrs, rspHdrs;
     Request req;
     String method;
-    URI uri;
+    RequestTarget target;
     HttpConnection connection;
     long reqContentLen;
     long rspContentLen;
@@ -87,14 +85,13 @@ class ExchangeImpl {
     boolean connectionUpgraded = false;
 
     ExchangeImpl(
-            String m, URI u, Request req, long len, HttpConnection connection) throws IOException {
+            String m, RequestTarget target, Request req, long len, HttpConnection connection) throws IOException {
         this.req = req;
-        // make a mutable copy to allow HttpHandler to modify in chain
-        this.reqHdrs = new Headers();
-        reqHdrs.putAll(req.headers());
+        // a mutable view to allow HttpHandler to modify in chain, only copied if modified
+        this.reqHdrs = new CopyOnWriteHeaders(req.headers());
         this.rspHdrs = new Headers();
         this.method = m;
-        this.uri = u;
+        this.target = target;
         this.connection = connection;
         this.reqContentLen = len;
         /* ros only used for headers, body written directly to stream */
@@ -111,7 +108,7 @@ class ExchangeImpl {
     }
 
     public URI getRequestURI() {
-        return uri;
+        return target.uri();
     }
 
     public String getRequestMethod() {
@@ -223,10 +220,8 @@ class ExchangeImpl {
             throw new IOException("headers already sent");
         }
         this.rcode = rCode;
-        String statusLine = rCode == 101 ? "HTTP/1.1 101 Switching Protocols\r\n"
-                : "HTTP/1.1 " + rCode + Code.msg(rCode) + "\r\n";
         PlaceholderOutputStream o = getPlaceholderResponseBody();
-        ros.write(statusLine.getBytes(ISO_CHARSET));
+        ResponseHead.writeStatusLine(rCode, ros);
         boolean noContentToSend = false; // assume there is content
         boolean noContentLengthHeader = false; // must not send Content-length is set
 
@@ -325,9 +320,13 @@ class ExchangeImpl {
             }
         }
 
-        writeHeaders(rspHdrs, ros);
+        ResponseHead.writeHeaders(rspHdrs, ros);
         this.rspContentLen = contentLen;
         sentHeaders = !informational;
+        if (sentHeaders && ServerImpl.MAX_RSP_TIME != -1) {
+            connection.responseStartedAt = ActivityTimer.now();
+            getServerImpl().updateTimeout(connection);
+        }
         if(logger.isLoggable(Level.TRACE)) {
             logger.log(Level.TRACE, "sendResponseHeaders(), code="+rCode+", noContentToSend=" + noContentToSend + ", contentLen=" + contentLen);
         }
@@ -337,28 +336,7 @@ class ExchangeImpl {
         if (noContentToSend) {
             close();
         }
-        getServerImpl().logReply(rCode, req.requestLine(), null);
-    }
-
-    static final Charset ISO_CHARSET = StandardCharsets.ISO_8859_1;
-    static final String colonSpace = ": ";
-    static final String CRNL = "\r\n";
-
-    private static void outputAscii(String s,OutputStream os) throws IOException {
-        os.write(s.getBytes(ISO_CHARSET));
-    }
-
-    void writeHeaders(Headers map, OutputStream os) throws IOException {
-        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
-            String key = entry.getKey();
-            for (String val : entry.getValue()) {
-                outputAscii(key,os);
-                outputAscii(colonSpace,os);
-                outputAscii(val,os);
-                outputAscii(CRNL,os);
-            }
-        }
-        outputAscii(CRNL,os);
+        getServerImpl().logReply(rCode, req, null);
     }
 
     public InetSocketAddress getRemoteAddress() {
@@ -376,9 +354,9 @@ class ExchangeImpl {
     }
 
     public String getProtocol() {
-        String reqline = req.requestLine();
-        int index = reqline.lastIndexOf(" ");
-        return reqline.substring(index + 1);
+        String version = req.version();
+        int index = version.lastIndexOf(' ');
+        return index < 0 ? version : version.substring(index + 1);
     }
 
     public SSLSession getSSLSession() {
@@ -0,0 +1,57 @@
+package robaho.net.httpserver;
+
+/**
+ * limits the number and total size of the headers of a request. The size of a field is the length of its name and
+ * value plus 32, as for the HTTP/2 SETTINGS_MAX_HEADER_LIST_SIZE, so HTTP/1 and HTTP/2 requests share the same limits.
+ * <p>
+ * Not thread-safe, a budget is used to parse a single request.
+ */
+public class HeaderBudget {
+    /** the per field overhead of RFC 7541 section 4.1 */
+    public static final int FIELD_OVERHEAD = 32;
+
+    private final int maxHeaders;
+    private final int maxSize;
+    private int count;
+    private int size;
+
+    /**
+     * a budget with the configured {@link ServerConfig#getMaxReqHeaders()} and {@link ServerConfig#getMaxReqHeaderSize()}
+     */
+    public HeaderBudget() {
+        this(ServerConfig.getMaxReqHeaders(), ServerConfig.getMaxReqHeaderSize());
+    }
+
+    public HeaderBudget(int maxHeaders, int maxSize) {
+        this.maxHeaders = maxHeaders;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * account for a header field
+     * @return false if the budget is exceeded
+     */
+    public boolean add(int nameLength, int valueLength) {
+        count++;
+        size += nameLength + valueLength + FIELD_OVERHEAD;
+        return !exceeded();
+    }
+
+    /**
+     * account for additional value bytes of the last field, e.g. an HTTP/1 folded line
+     * @return false if the budget is exceeded
+     */
+    public boolean extend(int length) {
+        size += length;
+        return !exceeded();
+    }
+
+    /** @return the number of bytes left in the budget */
+    public int remaining() {
+        return maxSize - size;
+    }
+
+    public boolean exceeded() {
+        return count > maxHeaders || size > maxSize;
+    }
+}
@@ -20,20 +20,20 @@ public class Http2ExchangeImpl extends HttpsExchange implements AuthFilter.Princ
     private final Headers response;
     private final InputStream in;
     private final OutputStream out;
-    private final URI uri;
+    private final RequestTarget target;
     private final String method;
     private final HttpContext ctx;
     protected final HTTP2Stream stream;
     private HttpPrincipal principal;
     private int responseCode;
 
-    public Http2ExchangeImpl(HTTP2Stream stream, URI uri, String method, HttpContext ctx, Headers request, Headers response, InputStream in, OutputStream out) {
+    Http2ExchangeImpl(HTTP2Stream stream, RequestTarget target, String method, HttpContext ctx, Headers request, Headers response, InputStream in, OutputStream out) {
         this.request = request;
         this.response = response;
         this.stream = stream;
         this.in = in;
         this.out = out;
-        this.uri = uri;
+        this.target = target;
         this.method = method;
         this.ctx = ctx;
     }
@@ -60,7 +60,7 @@ public class Http2ExchangeImpl extends HttpsExchange implements AuthFilter.Princ
 
     @Override
     public URI getRequestURI() {
-        return uri;
+        return target.uri();
     }
 
     @Override
@@ -90,7 +90,39 @@ public class Http2ExchangeImpl extends HttpsExchange implements AuthFilter.Princ
         }
         response.set(":status",Long.toString(rCode));
         responseCode = rCode;
-        stream.writeResponseHeaders(responseLength==-1);
+        stream.sendResponseHeaders(responseLength);
+    }
+
+    /**
+     * push a resource the client will need, e.g. a stylesheet referenced by the response. The promised request is
+     * handled by the context for the path, as if the client had sent a GET request. Pushes must be sent before the
+     * response body that references them.
+     * @param path the path of the pushed resource, including any query
+     * @param headers additional request headers, may be null
+     * @return false if the push was not sent, because the client disabled push or it would exceed the client's
+     * concurrent stream limit
+     */
+    public boolean push(String path, Headers headers) throws IOException {
+        Headers promised = new OptimizedHeaders(16);
+        if (headers != null) {
+            promised.putAll(headers);
+        }
+        promised.set(":method", "GET");
+        promised.set(":scheme", target.uri().getScheme());
+        promised.set(":authority", request.getFirst(":authority"));
+        promised.set(":path", path);
+        return stream.push(promised);
+    }
+
+    /**
+     * send a 103 Early Hints informational response, typically with Link headers so the client can preload
+     * resources while the final response is generated. It must be sent before sendResponseHeaders().
+     */
+    public void sendEarlyHints(Headers headers) throws IOException {
+        Headers hints = new OptimizedHeaders(headers.size() + 1);
+        hints.putAll(headers);
+        hints.set(":status", "103");
+        stream.writeInformationalHeaders(hints);
     }
 
     @Override
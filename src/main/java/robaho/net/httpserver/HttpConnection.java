@@ -34,6 +34,8 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLSession;
@@ -54,12 +56,22 @@ public class HttpConnection {
     OutputStream os;
 
     final Socket socket;
+    /* the accepted socket, which differs from socket if SSL is layered over it */
+    final Socket rawSocket;
+    /* the underlying channel if the server socket is channel based, used to park idle connections */
+    final SocketChannel channel;
     volatile boolean closed = false;
 
     volatile long lastActivityTime;
     volatile boolean noActivity;
     volatile boolean inRequest;
     volatile long drainingAt;
+    volatile long responseStartedAt;
+    /* the idle, request or response deadline for this connection */
+    TimingWheel.Timeout timeout;
+    /* membership in the idle connections LRU list, the links are guarded by its lock */
+    volatile boolean idle;
+    HttpConnection idlePrev, idleNext;
 
     public AtomicLong requestCount = new AtomicLong();
     private final String connectionId;
@@ -69,10 +81,17 @@ public class HttpConnection {
     }
 
     HttpConnection(Socket socket) throws IOException {
+        this(socket, socket);
+    }
+
+    HttpConnection(Socket socket, Socket rawSocket) throws IOException {
         this.socket = socket;
+        this.rawSocket = rawSocket;
+        this.channel = rawSocket.getChannel();
         this.is = new NoSyncBufferedInputStream(new ActivityTimerInputStream(socket.getInputStream()));
         this.os = new NoSyncBufferedOutputStream(new ActivityTimerOutputStream(socket.getOutputStream()));
         connectionId = "["+socket.getLocalPort()+"."+socket.getPort()+"]";
+        lastActivityTime = ActivityTimer.now();
     }
 
     public void debug() {
@@ -125,19 +144,29 @@ public class HttpConnection {
         if (socket.isClosed()) {
             return;
         }
+        if (channel != null && !channel.isBlocking()) {
+            // parked on the idle selector so there is no pending data, and the streams
+            // cannot be used in non-blocking mode, e.g. to send the SSL close_notify
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.TRACE, "error closing channel", e);
+            }
+            return;
+        }
         try {
             if (os!=null) {
                 // see issue #19, flush before closing, in case of pending data
                 os.flush();
             }
-        } catch(IOException ex){}
+        } catch(IOException | IllegalBlockingModeException ex){}
 
         try {
             /* need to ensure temporary selectors are closed */
             if (is != null) {
                 is.close();
             }
-        } catch (IOException e) {
+        } catch (IOException | IllegalBlockingModeException e) {
             logger.log(Level.TRACE, "error closing input stream", e);
         }
         try {
@@ -145,14 +174,33 @@ public class HttpConnection {
                 os.flush();
                 os.close();
             }
-        } catch (IOException e) {
+        } catch (IOException | IllegalBlockingModeException e) {
             logger.log(Level.TRACE, "error closing output stream", e);
         }
         try {
             socket.close();
-        } catch (IOException e) {
+        } catch (IOException | IllegalBlockingModeException e) {
+            // the channel may have been concurrently parked on the idle selector
             logger.log(Level.TRACE, "error closing socket", e);
+            try {
+                rawSocket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * abort the connection by resetting the underlying socket, this does not attempt to
+     * flush pending data, and unblocks any thread reading or writing the connection.
+     */
+    void abort() {
+        try {
+            rawSocket.setSoLinger(true, 0);
+            rawSocket.close();
+        } catch (IOException e) {
+            logger.log(Level.TRACE, "error aborting socket", e);
         }
+        close();
     }
 
     InputStream getInputStream() {
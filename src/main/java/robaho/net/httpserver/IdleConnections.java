@@ -0,0 +1,86 @@
+package robaho.net.httpserver;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * tracks the idle keep-alive connections in least recently used order, using links
+ * embedded in the connection so that adding and removing is O(1). A connection is
+ * added when it starts waiting for the next request, so the head of the list is
+ * the connection with the oldest lastActivityTime.
+ */
+class IdleConnections {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int limit;
+    private HttpConnection head, tail;
+    private volatile int size;
+
+    IdleConnections(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * add the connection as the most recently used idle connection, if it is not already idle
+     *
+     * @return the least recently used idle connection which must be evicted since the limit
+     * has been exceeded, or null
+     */
+    HttpConnection add(HttpConnection c) {
+        lock.lock();
+        try {
+            if (c.idle) {
+                return null;
+            }
+            c.idle = true;
+            c.idlePrev = tail;
+            if (tail != null) {
+                tail.idleNext = c;
+            } else {
+                head = c;
+            }
+            tail = c;
+            size++;
+            if (size <= limit) {
+                return null;
+            }
+            HttpConnection eldest = head;
+            unlink(eldest);
+            return eldest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(HttpConnection c) {
+        if (!c.idle) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (c.idle) {
+                unlink(c);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void unlink(HttpConnection c) {
+        if (c.idlePrev != null) {
+            c.idlePrev.idleNext = c.idleNext;
+        } else {
+            head = c.idleNext;
+        }
+        if (c.idleNext != null) {
+            c.idleNext.idlePrev = c.idlePrev;
+        } else {
+            tail = c.idlePrev;
+        }
+        c.idlePrev = c.idleNext = null;
+        c.idle = false;
+        size--;
+    }
+}
@@ -0,0 +1,154 @@
+package robaho.net.httpserver;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * parks idle keep-alive connections on a shared Selector so that no thread is held
+ * while waiting for the next request. When the connection becomes readable, the
+ * channel is returned to blocking mode and the resume task is submitted to the
+ * server executor.
+ * <p>
+ * All channel blocking mode changes are performed on the selector thread, since a
+ * channel cannot be made blocking while it is still registered.
+ */
+class IdleSelector implements Runnable {
+    private final ServerImpl server;
+    private final Logger logger;
+    private Executor executor;
+    private Thread thread;
+    private final Selector selector;
+    private final ServerStats stats;
+    private final ConcurrentLinkedQueue<Parked> pending = new ConcurrentLinkedQueue<>();
+    private final List<Parked> ready = new ArrayList<>();
+    private volatile boolean finished;
+
+    private record Parked(HttpConnection connection, Runnable resume) {}
+
+    IdleSelector(ServerImpl server, Logger logger, ServerStats stats) throws IOException {
+        this.server = server;
+        this.logger = logger;
+        this.stats = stats;
+        this.selector = Selector.open();
+    }
+
+    void start(Executor executor) {
+        this.executor = executor;
+        thread = new Thread(null, this, "HTTP-IdleSelector", 0, false);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * attempt to park the connection until more data is available
+     *
+     * @return true if the connection was parked, in which case the caller must
+     * not read from the connection, the resume task will be run when it is readable
+     */
+    boolean park(HttpConnection connection, Runnable resume) throws IOException {
+        if (finished || connection.channel == null || connection.closed) {
+            return false;
+        }
+        // must not park if there is buffered data, since the selector will not see it
+        if (connection.getInputStream().available() > 0) {
+            return false;
+        }
+        server.connectionParked(connection);
+        stats.parkedCount.incrementAndGet();
+        pending.add(new Parked(connection, resume));
+        selector.wakeup();
+        return true;
+    }
+
+    void close() {
+        finished = true;
+        try {
+            selector.close();
+        } catch (IOException ignore) {
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!finished) {
+                registerPending();
+                selector.select();
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    key.cancel();
+                    ready.add((Parked) key.attachment());
+                }
+                if (ready.isEmpty()) {
+                    continue;
+                }
+                // deregister the cancelled keys so the channels can be made blocking again
+                selector.selectNow();
+                resumeReady();
+            }
+        } catch (ClosedSelectorException e) {
+        } catch (IOException e) {
+            if (!finished) {
+                logger.log(Level.ERROR, "idle selector failed", e);
+            }
+        }
+    }
+
+    private void registerPending() {
+        Parked p;
+        while ((p = pending.poll()) != null) {
+            SocketChannel channel = p.connection.channel;
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, p);
+            } catch (ClosedChannelException e) {
+                // connection was closed while waiting to be parked
+            } catch (IOException e) {
+                logger.log(Level.DEBUG, "unable to park connection " + p.connection, e);
+                ready.add(p);
+            }
+        }
+        resumeReady();
+    }
+
+    private void resumeReady() {
+        for (var p : ready) {
+            resume(p);
+        }
+        ready.clear();
+    }
+
+    private void resume(Parked p) {
+        HttpConnection connection = p.connection;
+        if (connection.closed) {
+            return;
+        }
+        try {
+            connection.channel.configureBlocking(true);
+            executor.execute(p.resume);
+        } catch (IOException | RejectedExecutionException e) {
+            logger.log(Level.DEBUG, "unable to resume connection " + connection, e);
+            connection.close();
+        }
+    }
+}
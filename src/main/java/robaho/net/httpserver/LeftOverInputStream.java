@@ -99,6 +99,8 @@ abstract class LeftOverInputStream extends FilterInputStream {
      */
     public boolean drain(long l) throws IOException {
         try {
+            t.connection.drainingAt = ActivityTimer.now();
+            server.updateTimeout(t.connection);
             while (l > 0) {
                 if (server.isFinishing()) {
                     break;
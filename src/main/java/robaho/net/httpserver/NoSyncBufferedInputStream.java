@@ -4,6 +4,7 @@ import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
  * simple buffered input stream with no synchronization. mark/reset are not supported.
@@ -88,6 +89,31 @@ public class NoSyncBufferedInputStream extends FilterInputStream {
             count = n;
     }
 
+    /**
+     * Reads more data into the buffer while retaining the unread bytes, which are
+     * moved to the start of the buffer. The buffer is grown if it is full. This
+     * allows a parser to scan the buffer directly and request more data when a
+     * token spans the end of the buffered data.
+     *
+     * @return the number of bytes read, or -1 if the end of the stream is reached
+     */
+    int fillMore() throws IOException {
+        byte[] b = getBufIfOpen();
+        int avail = count - pos;
+        if (pos > 0) {
+            System.arraycopy(b, pos, b, 0, avail);
+            pos = 0;
+            count = avail;
+        }
+        if (count == b.length) {
+            b = buf = Arrays.copyOf(b, b.length * 2);
+        }
+        int n = getInIfOpen().read(b, count, b.length - count);
+        if (n > 0)
+            count += n;
+        return n;
+    }
+
     /**
      * See
      * the general contract of the {@code read}
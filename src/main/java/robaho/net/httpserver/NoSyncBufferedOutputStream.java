@@ -81,6 +81,28 @@ public class NoSyncBufferedOutputStream extends FilterOutputStream {
         count += len;
     }
 
+    /**
+     * Writes the characters of the string as ISO-8859-1 bytes directly into the buffer,
+     * without encoding the string to a byte array first. Characters outside of ISO-8859-1
+     * are written as '?'.
+     *
+     * @param      s     the string.
+     * @throws     IOException  if an I/O error occurs.
+     */
+    void writeAscii(String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; ) {
+            if (count == buf.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len - i, buf.length - count);
+            for (int end = i + n; i < end; i++) {
+                char c = s.charAt(i);
+                buf[count++] = c <= 0xFF ? (byte) c : (byte) '?';
+            }
+        }
+    }
+
     /**
      * Flushes this buffered output stream. This forces any buffered
      * output bytes to be written out to the underlying output stream.
@@ -7,13 +7,22 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Function;
 
+/**
+ * an int keyed map using linear probing. Removal shifts the following entries of the probe sequence back, so there
+ * are no tombstones and a map with a bounded number of live keys stays bounded regardless of the number of distinct
+ * keys inserted over time.
+ * <p>
+ * Updates are serialized by a write lock. Reads are optimistic and lock-free, a lookup that misses is validated
+ * against concurrent updates, since an entry may have been moved during the probe.
+ */
 public class OpenAddressIntMap<T> {
 
     private static class Entry {
-        int key;
-        Object value;
+        final int key;
+        final Object value;
 
         Entry(int key, Object value) {
             this.key = key;
@@ -21,11 +30,9 @@ public class OpenAddressIntMap<T> {
         }
     }
 
-    private int capacity;
-    private int mask;
-    private Entry[] entries;
-    private int size;
-    private int used;
+    private final StampedLock lock = new StampedLock();
+    private volatile Entry[] entries;
+    private volatile int size;
 
     public OpenAddressIntMap(int capacity) {
         // round up to next power of 2
@@ -37,77 +44,142 @@ public class OpenAddressIntMap<T> {
         capacity |= capacity >> 16;
         capacity++;
 
-        this.capacity = capacity;
-        this.mask = capacity - 1;
-        this.entries = new Entry[capacity];
+        this.entries = new Entry[Math.max(capacity, 2)];
     }
 
-    public synchronized T put(int key, T value) {
-        if(used>=capacity/2) {
-            resize();
+    /** spread the keys, since HTTP/2 stream ids are sequential odd numbers */
+    private static int home(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @param value the value, a null value removes the key
+     * @return the previous value or null
+     */
+    public T put(int key, T value) {
+        if (value == null) {
+            return remove(key);
         }
-        int index = key & mask;
-        int start = index;
-        int sentinel = -1;
-        Entry entry;
-        while ((entry = entries[index]) != null) {
-            if (entry.key==key) {
-                T oldValue = (T)entry.value;
-                entry.value = value;
-                if(value==null) {
-                    size--;
-                }
-                return oldValue;
-            } else if (entry.value==null) {
-                sentinel = index;
-            }
-            index = (index + 1) & mask;
-            if (index == start) {
+        long stamp = lock.writeLock();
+        try {
+            if (size >= entries.length / 2) {
                 resize();
-                index = key & mask;
-                start = index;
-                sentinel = -1;
             }
-        }
-        if(value==null) {
+            Entry[] entries = this.entries;
+            int mask = entries.length - 1;
+            int index = home(key, mask);
+            Entry entry;
+            while ((entry = entries[index]) != null) {
+                if (entry.key == key) {
+                    entries[index] = new Entry(key, value);
+                    return cast(entry.value);
+                }
+                index = (index + 1) & mask;
+            }
+            entries[index] = new Entry(key, value);
+            size++;
             return null;
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        entries[sentinel==-1 ? index : sentinel] = new Entry(key, value);
-        size++;
-        if(sentinel!=-1) used++;
-        return null;
     }
 
-    private void resize() {
-        OpenAddressIntMap newMap = new OpenAddressIntMap(capacity << 1);
-        for (Entry entry : entries) {
-            if (entry != null && entry.value != null) {
-                newMap.put(entry.key, entry.value);
+    /**
+     * @return the removed value or null if the key was not present
+     */
+    public T remove(int key) {
+        long stamp = lock.writeLock();
+        try {
+            Entry[] entries = this.entries;
+            int mask = entries.length - 1;
+            int hole = find(entries, key);
+            if (hole == -1) {
+                return null;
+            }
+            T oldValue = cast(entries[hole].value);
+            // move back any following entry whose home position is not between the hole and its current position
+            int index = (hole + 1) & mask;
+            Entry entry;
+            while ((entry = entries[index]) != null) {
+                int home = home(entry.key, mask);
+                if (((index - home) & mask) >= ((index - hole) & mask)) {
+                    entries[hole] = entry;
+                    hole = index;
+                }
+                index = (index + 1) & mask;
             }
+            entries[hole] = null;
+            size--;
+            return oldValue;
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        this.entries = newMap.entries;
-        this.capacity = newMap.capacity;
-        this.mask = newMap.mask;
-        this.size = newMap.size;
-        this.used = newMap.used;
     }
 
-    public T get(int key) {
-        int index = key & mask;
-        int start = index;
-        Entry entry;
-        while ((entry = entries[index]) != null) {
-            if (entry.key==key) {
-                return (T)entry.value;
+    private void resize() {
+        Entry[] old = entries;
+        Entry[] resized = new Entry[old.length << 1];
+        int mask = resized.length - 1;
+        for (Entry entry : old) {
+            if (entry != null) {
+                int index = home(entry.key, mask);
+                while (resized[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                resized[index] = entry;
             }
-            index = (index + 1) & mask;
-            if(index==start) {
+        }
+        entries = resized;
+    }
+
+    /** @return the index of the key or -1. The probe is bounded by the table length, since a concurrent update may remove every gap. */
+    private static int find(Entry[] entries, int key) {
+        int mask = entries.length - 1;
+        int index = home(key, mask);
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[index];
+            if (entry == null) {
                 break;
             }
+            if (entry.key == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static Object value(Entry[] entries, int key) {
+        int index = find(entries, key);
+        if (index == -1) {
+            return null;
         }
-        return null;
+        Entry entry = entries[index];
+        // the slot may have been reused between the probe and the read
+        return entry != null && entry.key == key ? entry.value : null;
     }
-    
+
+    /** the values are only stored through put, so they are instances of T */
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+
+    public T get(int key) {
+        long stamp = lock.tryOptimisticRead();
+        Object value = value(entries, key);
+        if (value != null || lock.validate(stamp)) {
+            return cast(value);
+        }
+        stamp = lock.readLock();
+        try {
+            return cast(value(entries, key));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
     public T getOrDefault(int key, T defaultValue) {
         T value = get(key);
         return value != null ? value : defaultValue;
@@ -117,28 +189,47 @@ public class OpenAddressIntMap<T> {
         return size;
     }
 
+    /** the number of slots in the table */
+    int capacity() {
+        return entries.length;
+    }
+
     public void clear() {
-        Arrays.fill(entries, null);
-        size=0;
-        used=0;
+        long stamp = lock.writeLock();
+        try {
+            Arrays.fill(entries, null);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     public Iterable<T> values() {
         List<T> result = new ArrayList<>();
-        for (Entry entry : entries) {
-            if (entry != null && entry.value != null) {
-                result.add((T)entry.value);
+        long stamp = lock.readLock();
+        try {
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    result.add(cast(entry.value));
+                }
             }
+        } finally {
+            lock.unlockRead(stamp);
         }
         return Collections.unmodifiableList(result);
     }
 
     public <T2> Set<Map.Entry<Integer, T2>> entrySet(Function<T, T2> valueMapper) {
         Set<Map.Entry<Integer, T2>> result = new HashSet<>();
-        for (Entry entry : entries) {
-            if (entry != null) {
-                result.add(Map.entry(entry.key, valueMapper != null ? valueMapper.apply((T)entry.value) : (T2) entry.value));
+        long stamp = lock.readLock();
+        try {
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    result.add(Map.entry(entry.key, valueMapper != null ? valueMapper.apply(cast(entry.value)) : OpenAddressIntMap.<T2>cast(entry.value)));
+                }
             }
+        } finally {
+            lock.unlockRead(stamp);
         }
         return Collections.unmodifiableSet(result);
     }
@@ -15,6 +15,10 @@ import com.sun.net.httpserver.Headers;
 
 public class OptimizedHeaders extends Headers {
     private final OpenAddressMap<String,Object> map;
+    // values of the well-known headers, indexed by WellKnownHeaders slot
+    private final Object[] wellKnown = new Object[WellKnownHeaders.COUNT];
+    private int wellKnownCount;
+
     public OptimizedHeaders() {
         super();
         map = new OpenAddressMap(16);
@@ -25,35 +29,56 @@ public class OptimizedHeaders extends Headers {
     }
     @Override
     public int size() {
-        return map.size();
+        return map.size() + wellKnownCount;
     }
 
     @Override
     public boolean isEmpty() {
-        return map.size() == 0;
+        return size() == 0;
+    }
+
+    private Object getValue(String normalized) {
+        int index = WellKnownHeaders.index(normalized);
+        return index >= 0 ? wellKnown[index] : map.get(normalized);
+    }
+
+    private Object putValue(String normalized, Object value) {
+        int index = WellKnownHeaders.index(normalized);
+        return index >= 0 ? putWellKnown(index, value) : map.put(normalized, value);
+    }
+
+    private Object putWellKnown(int index, Object value) {
+        Object old = wellKnown[index];
+        wellKnown[index] = value;
+        if (old == null) {
+            if (value != null) wellKnownCount++;
+        } else if (value == null) {
+            wellKnownCount--;
+        }
+        return old;
     }
 
     @Override
     public List<String> get(Object key) {
-        Object o = map.get(normalize((String)key));
+        Object o = getValue(normalize((String)key));
         return o == null ? null : (o instanceof String s) ? List.of(s) : (List<String>)o;
     }
 
     @Override
     public List<String> put(String key, List<String> value) {
-        Object o = map.put(normalize(key), value);
+        Object o = putValue(normalize(key), value);
         return o == null ? null : (o instanceof String s) ? List.of(s) : (List<String>)o;
     }
 
     @Override
     public List<String> remove(Object key) {
-        Object o = map.put(normalize((String)key),null);
+        Object o = putValue(normalize((String)key),null);
         return o == null ? null : (o instanceof String s) ? List.of(s) : (List<String>)o;
     }
 
     @Override
     public String getFirst(String key) {
-        Object o = map.get(normalize(key));
+        Object o = getValue(normalize(key));
         return o == null ? null : (o instanceof String s) ? s : ((List<String>)o).getFirst();
     }
 
@@ -89,6 +114,11 @@ public class OptimizedHeaders extends Headers {
     @Override
     public void add(String key, String value) {
         var normalized = normalize(key);
+        int index = WellKnownHeaders.index(normalized);
+        if (index >= 0) {
+            add(index, value);
+            return;
+        }
         Object o = map.get(normalized);
         if (o == null) {
             map.put(normalized, value);
@@ -99,19 +129,41 @@ public class OptimizedHeaders extends Headers {
         }
     }
 
+    /**
+     * add a value for the well-known header in the given WellKnownHeaders slot
+     */
+    void add(int index, String value) {
+        Object o = wellKnown[index];
+        if (o == null) {
+            putWellKnown(index, value);
+        } else if(o instanceof String s) {
+            wellKnown[index] = new ArrayList<>(List.of(s, value));
+        } else {
+            values(o).add(value);
+        }
+    }
+
+    /** a value that is not a single String is the mutable list of values */
+    @SuppressWarnings("unchecked")
+    private static List<String> values(Object o) {
+        return (List<String>) o;
+    }
+
     @Override
     public void clear() {
         map.clear();
+        Arrays.fill(wellKnown, null);
+        wellKnownCount = 0;
     }
 
     @Override
     public void set(String key, String value) {
-        map.put(normalize(key), value);
+        putValue(normalize(key), value);
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return map.get(normalize((String)key)) != null;
+        return getValue(normalize((String)key)) != null;
     }
 
     @Override
@@ -147,6 +199,14 @@ public class OptimizedHeaders extends Headers {
 
     @Override
     public void forEach(BiConsumer<? super String,? super List<String>> action) {
+        if (wellKnownCount > 0) {
+            for (int i = 0; i < wellKnown.length; i++) {
+                Object v = wellKnown[i];
+                if (v != null) {
+                    action.accept(WellKnownHeaders.NAMES[i], (v instanceof String s) ? List.of(s) : values(v));
+                }
+            }
+        }
         map.forEach((k,v) -> action.accept(k, (v instanceof String s) ? List.of(s) : (List<String>)v));
     }
 }
\ No newline at end of file
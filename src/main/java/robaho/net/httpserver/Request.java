@@ -29,27 +29,32 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 
 import com.sun.net.httpserver.Headers;
 
 /**
+ * parses the request line and headers by scanning the bytes buffered by the
+ * connection input stream, creating the Strings directly from the buffer.
  */
 class Request {
 
-    static final char CR = 13;
-    static final char LF = 10;
+    static final byte CR = 13;
+    static final byte LF = 10;
 
-    private final InputStream is;
+    private final NoSyncBufferedInputStream is;
     private final OutputStream os;
 
-    private final String requestLine;
+    private String requestLine;
+    private boolean requestLineTooLong;
+    private String method;
+    private String target;
+    private String version;
 
     Request(InputStream rawInputStream, OutputStream rawout) throws IOException {
-        is = rawInputStream;
+        is = rawInputStream instanceof NoSyncBufferedInputStream nsbis ? nsbis : new NoSyncBufferedInputStream(rawInputStream);
         os = rawout;
 
-        requestLine = readRequestLine();
+        readRequestLine();
     }
 
     public InputStream inputStream() {
@@ -60,175 +65,233 @@ class Request {
         return os;
     }
 
-    static class PushbackStream {
-        private final InputStream is;
-        private int pushback = -1;
-        private boolean eof=false;
+    // returned by nextLine() if the line exceeds the maximum length
+    private static final int TOO_LONG = -2;
 
-        public PushbackStream(InputStream is) {
-            this.is = is;
-        }
-        public int read() throws IOException {
-            if(pushback!=-1) {
-                try {
-                    return pushback;
-                } finally {
-                    pushback=-1;
-                }
+    /**
+     * find the end of the next line, reading more data into the buffer as needed.
+     * A line is terminated by LF, optionally preceded by CR.
+     *
+     * @param maxLength the maximum length of the line, so an unterminated line does not grow the buffer without bound
+     * @return the index of the LF in the buffer, -1 if the end of stream is reached, or TOO_LONG
+     */
+    private int nextLine(int maxLength) throws IOException {
+        int scanned = 0;
+        while (true) {
+            int lf = Utils.indexOf(is.buf, is.pos + scanned, is.count, LF);
+            if (lf >= 0) {
+                return lf;
+            }
+            scanned = is.count - is.pos;
+            if (scanned > maxLength) {
+                return TOO_LONG;
+            }
+            if (is.fillMore() < 0) {
+                return -1;
             }
-            if(eof) return -1;
-            return is.read();
-        }
-        public void skipWhitespace() throws IOException {
-            int c;
-            for(c=read();c==' ' || c=='\t';c=read()){}
-            if(c==-1) eof=true; else pushback=c;
         }
     }
 
+    /** @return the end of the line content, excluding the CR */
+    private static int lineEnd(byte[] buf, int start, int lf) {
+        return (lf > start && buf[lf - 1] == CR) ? lf - 1 : lf;
+    }
+
+    private static String string(byte[] buf, int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
     /**
-     * read a line from the stream returning as a String.
-     * Not used for reading headers.
+     * read the request line, skipping any leading empty lines, and split it into
+     * the method, target and version. The line is bounded by the maximum request header size.
      */
-    private boolean readLine(BufferedBuilder lineBuf) throws IOException {
-        boolean gotCR = false;
+    private void readRequestLine() throws IOException {
         while (true) {
-            int c;
-            
+            int lf;
             try {
-                c = is.read();
-            } catch(IOException e) {
-                if(lineBuf.isEmpty()) return false;
+                lf = nextLine(ServerConfig.getMaxReqHeaderSize());
+            } catch (IOException e) {
+                if (is.count == is.pos) {
+                    requestLine = "";
+                    return;
+                }
                 throw e;
             }
-
-            if (c == -1) {
-                lineBuf.count=0;
-                return false;
+            if (lf == TOO_LONG) {
+                requestLineTooLong = true;
+                requestLine = "";
+                return;
             }
-            if (gotCR) {
-                if (c == LF) {
-                    return true;
-                } else {
-                    gotCR = false;
-                    lineBuf.append(CR);
-                    lineBuf.append((char)c);
-                }
-            } else {
-                if (c == CR) {
-                    gotCR = true;
-                } else {
-                    lineBuf.append((char)c);
-                }
+            if (lf == -1) {
+                requestLine = "";
+                return;
+            }
+            byte[] buf = is.buf;
+            int start = is.pos;
+            int end = lineEnd(buf, start, lf);
+            is.pos = lf + 1;
+            if (start == end) {
+                continue;
             }
+            while (start < end && buf[start] == ' ') start++;
+            while (end > start && buf[end - 1] == ' ') end--;
+
+            int sp1 = Utils.indexOf(buf, start, end, (byte) ' ');
+            int sp2 = sp1 < 0 ? -1 : Utils.indexOf(buf, sp1 + 1, end, (byte) ' ');
+            if (sp2 < 0) {
+                requestLine = string(buf, start, end);
+                return;
+            }
+            method = string(buf, start, sp1);
+            target = string(buf, sp1 + 1, sp2);
+            version = string(buf, sp2 + 1, end);
+            return;
         }
     }
 
     /**
-     * read the request line into the buffer
+     * @returns the request line or the empty string if not found
      */
-    private String readRequestLine() throws IOException {
-        final BufferedBuilder bb = new BufferedBuilder(64);
-        while(readLine(bb)) {
-            if(!bb.isEmpty()) break;
+    public String requestLine() {
+        if (requestLine == null) {
+            requestLine = method + " " + target + " " + version;
         }
-        return bb.trimmed();
+        return requestLine;
     }
 
-    /** return trimmed value from StringBuilder and reset to empty */
-    private static String trimmed(BufferedBuilder bb) {
-        return bb.trimmed();
+    /**
+     * @return true if the request line exceeds the maximum request header size, the rest of the request has not
+     * been read
+     */
+    boolean requestLineTooLong() {
+        return requestLineTooLong;
     }
 
     /**
-     * @returns the request line or the empty string if not found
+     * @return the request method, or null if the request line is malformed
      */
-    public String requestLine() {
-        return requestLine;
+    public String method() {
+        return method;
+    }
+
+    /**
+     * @return the request target, or null if the request line is malformed
+     */
+    public String target() {
+        return target;
+    }
+
+    /**
+     * @return the protocol version, or null if the request line is malformed
+     */
+    public String version() {
+        return version;
     }
 
     Headers hdrs = null;
+    private boolean headersTooLarge;
 
-    private static final class BufferedBuilder {
-        private byte[] buffer;
-        private int capacity;
-        private int count;
-        BufferedBuilder(int capacity) {
-            buffer = new byte[capacity];
-            this.capacity=capacity;
-        }
-        boolean isEmpty() {
-            return count==0;
-        }
-        void append(char c) {
-            if(count==capacity) {
-                capacity *= 2;
-                buffer = Arrays.copyOf(buffer, capacity);
+    /**
+     * @return the header name with the first character upper case and the rest lower case,
+     * the buffer has already been consumed so it is normalized in place
+     */
+    private static String headerName(byte[] buf, int start, int end) {
+        if (start < end) {
+            byte b = buf[start];
+            if (b >= 'a' && b <= 'z') {
+                buf[start] = (byte) (b - 32);
+            }
+            for (int i = start + 1; i < end; i++) {
+                b = buf[i];
+                if (b >= 'A' && b <= 'Z') {
+                    buf[i] = (byte) (b + 32);
+                }
             }
-            buffer[count++]=(byte)c;
         }
-        public String trimmed() {
-            int start=0;
-            while(start<count && buffer[start]==' ') start++;
-            int end=count;
-            while(end>0 && buffer[end-1]==' ') end--;
-            count=0;
-            return new String(buffer,start,end-start,StandardCharsets.ISO_8859_1);
+        return string(buf, start, end);
+    }
+
+    /** @return the trimmed value, skipping leading spaces and tabs and trailing spaces */
+    private static String headerValue(byte[] buf, int start, int end) {
+        while (start < end && (buf[start] == ' ' || buf[start] == '\t')) start++;
+        while (end > start && buf[end - 1] == ' ') end--;
+        return string(buf, start, end);
+    }
+
+    private static void add(OptimizedHeaders hdrs, String key, int keyIndex, String value) {
+        if (keyIndex >= 0) {
+            hdrs.add(keyIndex, value);
+        } else {
+            hdrs.add(key, value);
         }
     }
 
-    @SuppressWarnings("fallthrough")
+    /**
+     * @return true if the request headers exceed the {@link HeaderBudget}, parsing stops at the first header over
+     * the budget
+     */
+    boolean headersTooLarge() {
+        return headersTooLarge;
+    }
+
     Headers headers() throws IOException {
         if (hdrs != null) {
             return hdrs;
         }
-        hdrs = new OptimizedHeaders(16);
+        OptimizedHeaders hdrs = new OptimizedHeaders(16);
+        this.hdrs = hdrs;
+        HeaderBudget budget = new HeaderBudget();
 
-        BufferedBuilder key = new BufferedBuilder(32);
-        BufferedBuilder value = new BufferedBuilder(128);
+        String key = null;
+        // the WellKnownHeaders slot of the key, or -1
+        int keyIndex = -1;
+        String value = null;
 
-        PushbackStream pbs = new PushbackStream(is);
-
-        BufferedBuilder current = key;
-        boolean prevCR = false;
-        boolean sol = true;
-        int c;
-
-        while((c=pbs.read())!=-1) {
-            if(c==CR) { prevCR = true; }
-            else if(c==LF && prevCR) {
-                if(key.isEmpty() && value.isEmpty()) break;
-                if(sol) {
-                    hdrs.add(trimmed(key),trimmed(value));
-                    break;
+        int lf;
+        while ((lf = nextLine(budget.remaining())) != -1) {
+            if (lf == TOO_LONG) {
+                headersTooLarge = true;
+                return hdrs;
+            }
+            byte[] buf = is.buf;
+            int start = is.pos;
+            int end = lineEnd(buf, start, lf);
+            is.pos = lf + 1;
+            if (start == end) {
+                break;
+            }
+            byte first = buf[start];
+            if (first == ' ' || first == '\t') {
+                if (!budget.extend(end - start)) {
+                    headersTooLarge = true;
+                    return hdrs;
                 }
-                prevCR=false;
-                sol=true;
-            } else {
-                if(sol && (c==' ' || c=='\t')) {
-                    pbs.skipWhitespace();
-                    current=value;
-                    sol=false;
+                // obsolete line folding, the continuation is appended to the previous value
+                String more = headerValue(buf, start, end);
+                if (key == null) {
+                    key = "";
+                    value = more;
                 } else {
-                    if(sol) {
-                        if(!key.isEmpty() || !value.isEmpty()) {
-                            hdrs.add(trimmed(key),trimmed(value));
-                        }
-                        current=key;
-                        sol=false;
-                    }
-                    if(c==':' && current==key) {
-                        current=value;
-                        pbs.skipWhitespace();
-                    } else {
-                        if(current==key) {
-                            key.append((char)(current.count==0 ? Character.toUpperCase(c) : Character.toLowerCase(c)));
-                        } else {
-                            current.append((char)c);
-                        }
-                    }
+                    value = value + more;
                 }
+                continue;
             }
+            if (key != null) {
+                add(hdrs, key, keyIndex, value);
+            }
+            int colon = Utils.indexOf(buf, start, end, (byte) ':');
+            if (!budget.add(colon < 0 ? end - start : colon - start, colon < 0 ? 0 : end - colon - 1)) {
+                headersTooLarge = true;
+                return hdrs;
+            }
+            int nameEnd = colon < 0 ? end : colon;
+            while (nameEnd > start && buf[nameEnd - 1] == ' ') nameEnd--;
+            keyIndex = WellKnownHeaders.index(buf, start, nameEnd);
+            key = keyIndex >= 0 ? WellKnownHeaders.NAMES[keyIndex] : headerName(buf, start, nameEnd);
+            value = colon < 0 ? "" : headerValue(buf, colon + 1, end);
+        }
+        if (key != null && lf != -1) {
+            add(hdrs, key, keyIndex, value);
         }
         return hdrs;
     }
@@ -0,0 +1,141 @@
+package robaho.net.httpserver;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * the request-target of a request. The common origin-form target ("/path?query") is
+ * split and validated by a single scan, and the java.net.URI is only created if the
+ * handler asks for it. Any other form, or a path containing escapes, is parsed by URI
+ * immediately.
+ */
+final class RequestTarget {
+    private static final boolean[] PATH = new boolean[128];
+    private static final boolean[] QUERY = new boolean[128];
+
+    static {
+        String path = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789" + "-_.!~*'()" + ":@&=+$," + ";/";
+        for (int i = 0; i < path.length(); i++) {
+            PATH[path.charAt(i)] = true;
+            QUERY[path.charAt(i)] = true;
+        }
+        QUERY['?'] = true;
+        QUERY['['] = true;
+        QUERY[']'] = true;
+    }
+
+    private final String prefix; // "scheme://authority" for HTTP/2, or null
+    private final String raw;
+    private final String path;
+    private final String rawQuery;
+    private URI uri;
+
+    private RequestTarget(String prefix, String raw, String path, String rawQuery, URI uri) {
+        this.prefix = prefix;
+        this.raw = raw;
+        this.path = path;
+        this.rawQuery = rawQuery;
+        this.uri = uri;
+    }
+
+    /**
+     * parse the request-target of a HTTP/1 request line
+     */
+    static RequestTarget parse(String target) throws URISyntaxException {
+        return parse(null, target, true);
+    }
+
+    /**
+     * parse the :path of a HTTP/2 request, the URI is absolute using the scheme and authority
+     */
+    static RequestTarget parse(String scheme, String authority, String target) throws URISyntaxException {
+        return parse(scheme + "://" + authority, target, validAuthority(authority));
+    }
+
+    private static boolean validAuthority(String authority) {
+        for (int i = 0; i < authority.length(); i++) {
+            char c = authority.charAt(i);
+            if (c >= 128 || !(QUERY[c] && c != '/' && c != '?')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static RequestTarget parse(String prefix, String target, boolean plain) throws URISyntaxException {
+        int query = plain ? originForm(target) : -1;
+        if (query == -1) {
+            URI uri = new URI(prefix == null ? target : prefix + target);
+            return new RequestTarget(prefix, target, uri.getPath(), uri.getRawQuery(), uri);
+        }
+        if (query == target.length()) {
+            return new RequestTarget(prefix, target, target, null, null);
+        }
+        return new RequestTarget(prefix, target, target.substring(0, query), target.substring(query + 1), null);
+    }
+
+    /**
+     * @return the index of the '?' or the length of the target, or -1 if the target is
+     * not a plain origin-form target that can be used without decoding
+     */
+    private static int originForm(String target) {
+        int len = target.length();
+        if (len == 0 || target.charAt(0) != '/') {
+            return -1;
+        }
+        int i = 1;
+        for (; i < len; i++) {
+            char c = target.charAt(i);
+            if (c == '?') {
+                break;
+            }
+            if (c >= 128 || !PATH[c]) {
+                return -1;
+            }
+        }
+        int query = i;
+        for (i = query + 1; i < len; i++) {
+            char c = target.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= len || !isHex(target.charAt(i + 1)) || !isHex(target.charAt(i + 2))) {
+                    return -1;
+                }
+                i += 2;
+            } else if (c >= 128 || !QUERY[c]) {
+                return -1;
+            }
+        }
+        return query;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * @return the decoded path used to find the context, "/" if the target has no path
+     */
+    String path() {
+        return path == null ? "/" : path;
+    }
+
+    /**
+     * @return the raw query, or null if there is none
+     */
+    String rawQuery() {
+        return rawQuery;
+    }
+
+    URI uri() {
+        if (uri == null) {
+            // the target was validated when parsed
+            uri = URI.create(prefix == null ? raw : prefix + raw);
+        }
+        return uri;
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+}
@@ -0,0 +1,84 @@
+package robaho.net.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * writes the status line and headers of a HTTP/1.1 response. The status lines and the
+ * well-known header names are encoded once, and other names and values are written
+ * directly into the buffer of the connection output stream.
+ */
+final class ResponseHead {
+    private static final int MIN_CODE = 100;
+    private static final int MAX_CODE = 999;
+
+    private static final byte[][] STATUS_LINES = new byte[MAX_CODE - MIN_CODE + 1][];
+    // "Name: " for each of the WellKnownHeaders
+    private static final byte[][] NAMES = new byte[WellKnownHeaders.COUNT][];
+    private static final int DATE = WellKnownHeaders.index("Date");
+
+    private static final byte[] COLON_SPACE = { ':', ' ' };
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    static {
+        for (int code = MIN_CODE; code <= MAX_CODE; code++) {
+            STATUS_LINES[code - MIN_CODE] = statusLine(code).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        for (int i = 0; i < WellKnownHeaders.COUNT; i++) {
+            NAMES[i] = (WellKnownHeaders.NAMES[i] + ": ").getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private ResponseHead() {}
+
+    private static String statusLine(int code) {
+        return "HTTP/1.1 " + code + Code.msg(code) + "\r\n";
+    }
+
+    static void writeStatusLine(int code, OutputStream os) throws IOException {
+        if (code >= MIN_CODE && code <= MAX_CODE) {
+            os.write(STATUS_LINES[code - MIN_CODE]);
+        } else {
+            writeAscii(statusLine(code), os);
+        }
+    }
+
+    /**
+     * write the headers followed by the empty line that ends the response head
+     */
+    static void writeHeaders(Headers headers, OutputStream os) throws IOException {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            String key = entry.getKey();
+            int index = WellKnownHeaders.index(key);
+            for (String val : entry.getValue()) {
+                if (index >= 0) {
+                    os.write(NAMES[index]);
+                } else {
+                    writeAscii(key, os);
+                    os.write(COLON_SPACE);
+                }
+                byte[] date = index == DATE ? ActivityTimer.dateAndTimeBytes(val) : null;
+                if (date != null) {
+                    os.write(date);
+                } else {
+                    writeAscii(val, os);
+                }
+                os.write(CRLF);
+            }
+        }
+        os.write(CRLF);
+    }
+
+    private static void writeAscii(String s, OutputStream os) throws IOException {
+        if (os instanceof NoSyncBufferedOutputStream buffered) {
+            buffered.writeAscii(s);
+        } else {
+            os.write(s.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+}
@@ -40,6 +40,7 @@ public class ServerConfig {
     private static final long DEFAULT_IDLE_INTERVAL_IN_SECS = 30;
     private static final int DEFAULT_MAX_CONNECTIONS = -1; // no limit on maximum connections
     private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 200;
+    private static final int DEFAULT_ACCEPTOR_SHARDS = 1;
 
     private static final long DEFAULT_MAX_REQ_TIME = -1; // default: forever
     private static final long DEFAULT_MAX_RSP_TIME = -1; // default: forever
@@ -48,12 +49,24 @@ public class ServerConfig {
     // timing out request/response if max request/response time is configured
     private static final long DEFAULT_REQ_RSP_TIMER_TASK_SCHEDULE_MILLIS = 1000;
     private static final int DEFAULT_MAX_REQ_HEADERS = 200;
+    private static final int DEFAULT_MAX_REQ_HEADER_SIZE = 384 * 1024;
     private static final long DEFAULT_DRAIN_AMOUNT = 64 * 1024;
 
     private static final int DEFAULT_HTTP2_MAX_FRAME_SIZE = 16384;
     private static final int DEFAULT_HTTP2_INITIAL_WINDOW_SIZE = 65535;
     private static final int DEFAULT_HTTP2_CONNECTION_WINDOW_SIZE = 65535;
     private static final int DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = -1; // use -1 for no limit
+    private static final int DEFAULT_HTTP2_HEADER_TABLE_SIZE = 4096;
+    private static final int DEFAULT_HTTP2_MAX_RECEIVE_WINDOW_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_HTTP2_MAX_HEADER_BLOCK_SIZE = 64 * 1024;
+    private static final int DEFAULT_HTTP2_MAX_RESET_STREAMS = 200; // use -1 for no limit
+    private static final int DEFAULT_HTTP2_MAX_CONTROL_FRAMES = 10000; // use -1 for no limit
+    private static final long DEFAULT_HTTP2_FLOOD_WINDOW_MILLIS = 30000;
+    private static final long DEFAULT_HTTP2_PING_INTERVAL_MILLIS = 10000; // use -1 to disable keepalive pings
+    private static final long DEFAULT_HTTP2_PING_TIMEOUT_MILLIS = 20000;
+    private static final long DEFAULT_HTTP2_IDLE_TIMEOUT_MILLIS = 300000; // use -1 for no limit
+    private static final long DEFAULT_HTTP2_MAX_CONNECTION_AGE_MILLIS = -1; // use -1 for no limit
+    private static final long DEFAULT_HTTP2_MAX_CONNECTION_AGE_GRACE_MILLIS = -1; // use -1 for no limit
 
     private static long idleTimerScheduleMillis;
     private static long idleIntervalMillis;
@@ -65,8 +78,12 @@ public class ServerConfig {
     // requests
     private static int maxConnections;
     private static int maxIdleConnections;
+    // the number of listening sockets bound with SO_REUSEPORT, each with its own dispatcher thread
+    private static int acceptorShards;
     // The maximum number of request headers allowable
     private static int maxReqHeaders;
+    // The maximum total size of the request headers, each header counted as name + value + 32 bytes
+    private static int maxReqHeaderSize;
     // max time a request or response is allowed to take
     private static long maxReqTime;
     private static long maxRspTime;
@@ -75,6 +92,8 @@ public class ServerConfig {
 
     // the value of the TCP_NODELAY socket-level option
     private static boolean noDelay;
+    // park idle keep-alive connections on a selector rather than a blocked thread
+    private static boolean parkIdleConnections;
 
     private static boolean http2OverSSL;
     private static boolean http2OverNonSSL;
@@ -83,6 +102,18 @@ public class ServerConfig {
     private static int http2ConnectionWindowSize;
     private static int http2MaxConcurrentStreams;
     private static boolean http2DisableFlushDelay;
+    private static boolean http2DisableHuffmanEncoding;
+    private static int http2HeaderTableSize;
+    private static int http2MaxReceiveWindowSize;
+    private static int http2MaxHeaderBlockSize;
+    private static int http2MaxResetStreams;
+    private static int http2MaxControlFrames;
+    private static long http2FloodWindowMillis;
+    private static long http2PingIntervalMillis;
+    private static long http2PingTimeoutMillis;
+    private static long http2IdleTimeoutMillis;
+    private static long http2MaxConnectionAgeMillis;
+    private static long http2MaxConnectionAgeGraceMillis;
 
     static {
         java.security.AccessController.doPrivileged(
@@ -111,6 +142,13 @@ public class ServerConfig {
                                 pkg + ".maxIdleConnections",
                                 DEFAULT_MAX_IDLE_CONNECTIONS);
 
+                        acceptorShards = Integer.getInteger(
+                                pkg + ".acceptorShards",
+                                DEFAULT_ACCEPTOR_SHARDS);
+                        if (acceptorShards <= 0) {
+                            acceptorShards = DEFAULT_ACCEPTOR_SHARDS;
+                        }
+
                         drainAmount = Long.getLong(pkg + ".drainAmount",
                                 DEFAULT_DRAIN_AMOUNT);
 
@@ -121,6 +159,13 @@ public class ServerConfig {
                             maxReqHeaders = DEFAULT_MAX_REQ_HEADERS;
                         }
 
+                        maxReqHeaderSize = Integer.getInteger(
+                                pkg + ".maxReqHeaderSize",
+                                DEFAULT_MAX_REQ_HEADER_SIZE);
+                        if (maxReqHeaderSize <= 0) {
+                            maxReqHeaderSize = DEFAULT_MAX_REQ_HEADER_SIZE;
+                        }
+
                         maxReqTime = Long.getLong(pkg + ".maxReqTime",
                                 DEFAULT_MAX_REQ_TIME);
 
@@ -139,6 +184,8 @@ public class ServerConfig {
 
                         noDelay = Boolean.getBoolean(pkg + ".nodelay");
 
+                        parkIdleConnections = Boolean.getBoolean(pkg + ".parkIdleConnections");
+
                         http2OverSSL = Boolean.getBoolean(pkg + ".http2OverSSL");
                         http2OverNonSSL = Boolean.getBoolean(pkg + ".http2OverNonSSL");
 
@@ -148,6 +195,18 @@ public class ServerConfig {
 
                         http2MaxConcurrentStreams = Integer.getInteger(pkg + ".http2MaxConcurrentStreams", DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS);
                         http2DisableFlushDelay = Boolean.getBoolean(pkg + ".http2DisableFlushDelay");
+                        http2DisableHuffmanEncoding = Boolean.getBoolean(pkg + ".http2DisableHuffmanEncoding");
+                        http2HeaderTableSize = Integer.getInteger(pkg + ".http2HeaderTableSize", DEFAULT_HTTP2_HEADER_TABLE_SIZE);
+                        http2MaxReceiveWindowSize = Integer.getInteger(pkg + ".http2MaxReceiveWindowSize", DEFAULT_HTTP2_MAX_RECEIVE_WINDOW_SIZE);
+                        http2MaxHeaderBlockSize = Integer.getInteger(pkg + ".http2MaxHeaderBlockSize", DEFAULT_HTTP2_MAX_HEADER_BLOCK_SIZE);
+                        http2MaxResetStreams = Integer.getInteger(pkg + ".http2MaxResetStreams", DEFAULT_HTTP2_MAX_RESET_STREAMS);
+                        http2MaxControlFrames = Integer.getInteger(pkg + ".http2MaxControlFrames", DEFAULT_HTTP2_MAX_CONTROL_FRAMES);
+                        http2FloodWindowMillis = Long.getLong(pkg + ".http2FloodWindowMillis", DEFAULT_HTTP2_FLOOD_WINDOW_MILLIS);
+                        http2PingIntervalMillis = Long.getLong(pkg + ".http2PingIntervalMillis", DEFAULT_HTTP2_PING_INTERVAL_MILLIS);
+                        http2PingTimeoutMillis = Long.getLong(pkg + ".http2PingTimeoutMillis", DEFAULT_HTTP2_PING_TIMEOUT_MILLIS);
+                        http2IdleTimeoutMillis = Long.getLong(pkg + ".http2IdleTimeoutMillis", DEFAULT_HTTP2_IDLE_TIMEOUT_MILLIS);
+                        http2MaxConnectionAgeMillis = Long.getLong(pkg + ".http2MaxConnectionAgeMillis", DEFAULT_HTTP2_MAX_CONNECTION_AGE_MILLIS);
+                        http2MaxConnectionAgeGraceMillis = Long.getLong(pkg + ".http2MaxConnectionAgeGraceMillis", DEFAULT_HTTP2_MAX_CONNECTION_AGE_GRACE_MILLIS);
 
                         return null;
                     }
@@ -197,14 +256,34 @@ public class ServerConfig {
         return maxIdleConnections;
     }
 
+    /**
+     * @return Returns the number of listening sockets to bind on the server address
+     *         using SO_REUSEPORT, each served by its own dispatcher thread, so that the
+     *         kernel spreads accepts across them. A value of 1 uses a single socket.
+     */
+    static int getAcceptorShards() {
+        return acceptorShards;
+    }
+
     static long getDrainAmount() {
         return drainAmount;
     }
 
-    static int getMaxReqHeaders() {
+    /**
+     * @return the maximum number of request headers, for both HTTP/1 and HTTP/2
+     */
+    public static int getMaxReqHeaders() {
         return maxReqHeaders;
     }
 
+    /**
+     * @return the maximum total size of the request headers, each header counted as name + value + 32 bytes. For HTTP/2
+     * this is advertised as SETTINGS_MAX_HEADER_LIST_SIZE
+     */
+    public static int getMaxReqHeaderSize() {
+        return maxReqHeaderSize;
+    }
+
     /**
      * @return Returns the maximum amount of time the server will wait for the
      *         request to be read
@@ -240,6 +319,14 @@ public class ServerConfig {
         return noDelay;
     }
 
+    /**
+     * @return true if idle keep-alive connections should be registered with a shared
+     * selector, releasing the handler thread until the next request arrives
+     */
+    static boolean parkIdleConnections() {
+        return parkIdleConnections;
+    }
+
     public static boolean http2OverSSL() {
         return http2OverSSL;
     }
@@ -268,5 +355,83 @@ public class ServerConfig {
     public static boolean http2DisableFlushDelay() {
         return http2DisableFlushDelay;
     }
+    /**
+     * @return true if huffman encoding of response header strings is disabled. huffman encoding reduces the
+     * header size at the expense of cpu
+     */
+    public static boolean http2DisableHuffmanEncoding() {
+        return http2DisableHuffmanEncoding;
+    }
+    /**
+     * @return the maximum size in octets of the request header decoding table, advertised as SETTINGS_HEADER_TABLE_SIZE
+     */
+    public static int http2HeaderTableSize() {
+        return http2HeaderTableSize;
+    }
+    /**
+     * @return the maximum size in octets that autotuning grows the connection and stream receive windows to, based on
+     * the measured bandwidth-delay product. autotuning is disabled if not larger than the configured window sizes
+     */
+    public static int http2MaxReceiveWindowSize() {
+        return http2MaxReceiveWindowSize;
+    }
+    /**
+     * @return the maximum size in octets of a compressed request header block, including all CONTINUATION frames
+     */
+    public static int http2MaxHeaderBlockSize() {
+        return http2MaxHeaderBlockSize;
+    }
+    /**
+     * @return the maximum number of streams with a running handler a client may reset per flood window, or -1 for no limit
+     */
+    public static int http2MaxResetStreams() {
+        return http2MaxResetStreams;
+    }
+    /**
+     * @return the maximum number of PING, SETTINGS, PRIORITY and empty frames a client may send per flood window, or -1 for no limit
+     */
+    public static int http2MaxControlFrames() {
+        return http2MaxControlFrames;
+    }
+    /**
+     * @return the length of the window in milliseconds over which the reset stream and control frame limits are applied
+     */
+    public static long http2FloodWindowMillis() {
+        return http2FloodWindowMillis;
+    }
+    /**
+     * @return the time in milliseconds without any traffic after which a keepalive PING is sent, or -1 to disable
+     * keepalive pings. This should be less than the idleInterval, which closes connections without any traffic
+     */
+    public static long http2PingIntervalMillis() {
+        return http2PingIntervalMillis;
+    }
+    /**
+     * @return the time in milliseconds to wait for a keepalive PING acknowledgement before closing the connection
+     */
+    public static long http2PingTimeoutMillis() {
+        return http2PingTimeoutMillis;
+    }
+    /**
+     * @return the time in milliseconds a connection may have no open streams before a graceful GOAWAY is sent,
+     * or -1 for no limit
+     */
+    public static long http2IdleTimeoutMillis() {
+        return http2IdleTimeoutMillis;
+    }
+    /**
+     * @return the maximum age in milliseconds of a connection before a graceful GOAWAY is sent, so clients reconnect
+     * and are rebalanced by a load balancer, or -1 for no limit. Up to 10% is subtracted at random per connection
+     */
+    public static long http2MaxConnectionAgeMillis() {
+        return http2MaxConnectionAgeMillis;
+    }
+    /**
+     * @return the time in milliseconds active streams may continue after a graceful GOAWAY before the connection is
+     * closed, or -1 for no limit
+     */
+    public static long http2MaxConnectionAgeGraceMillis() {
+        return http2MaxConnectionAgeGraceMillis;
+    }
 
 }
@@ -36,21 +36,21 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.net.URI;
+import java.net.StandardSocketOptions;
 import java.net.URISyntaxException;
+import java.nio.channels.ServerSocketChannel;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.LogRecord;
 
 import javax.net.ssl.SSLSocket;
@@ -81,19 +81,22 @@ class ServerImpl {
     private HttpsConfigurator httpsConfig;
     private final ContextList contexts;
     private final ServerSocket socket;
+    // all listening sockets, socket is the first. there is more than one if SO_REUSEPORT sharding is enabled
+    private final ServerSocket[] sockets;
 
     private final Set<HttpConnection> allConnections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // non-null if the number of idle connections is limited
+    private final IdleConnections idleConnections = MAX_IDLE_CONNECTIONS > 0 ? new IdleConnections(MAX_IDLE_CONNECTIONS) : null;
     private volatile boolean finished = false;
     private boolean bound = false;
     private boolean started = false;
     private final HttpServer wrapper;
 
-    // schedule for the timer task that's responsible for idle connection management
-    static final long IDLE_TIMER_TASK_SCHEDULE = ServerConfig.getIdleTimerScheduleMillis();
+    // the tick of the timing wheel that's responsible for idle connection and request/response timeout
+    // management, the finer of the two configured schedules
+    static final long TIMER_TICK = Math.min(ServerConfig.getIdleTimerScheduleMillis(), ServerConfig.getReqRspTimerScheduleMillis());
     static final int MAX_CONNECTIONS = ServerConfig.getMaxConnections();
     static final int MAX_IDLE_CONNECTIONS = ServerConfig.getMaxIdleConnections();
-    // schedule for the timer task that's responsible for request/response timeout
-    // management
     static final long MAX_REQ_TIME = getTimeMillis(ServerConfig.getMaxReqTime());
     static final long MAX_RSP_TIME = getTimeMillis(ServerConfig.getMaxRspTime());
     // the maximum idle duration for a connection which is currently idle but has
@@ -115,11 +118,15 @@ class ServerImpl {
     }
 
     private Timer timer;
+    // connection timeouts and http2 pings
+    private final TimingWheel wheel;
     private Logger logger;
-    private Thread dispatcherThread;
+    private Thread[] dispatcherThreads;
+    // non-null if idle connections are parked on a selector
+    private final IdleSelector idleSelector;
 
     // statistics
-    private final ServerStats stats = new ServerStats();
+    private final ServerStats stats;
     private final HTTP2Stats http2Stats = new HTTP2Stats();
 
     ServerImpl(HttpServer wrapper, String protocol, InetSocketAddress addr, int backlog) throws IOException {
@@ -127,7 +134,7 @@ class ServerImpl {
         this.protocol = protocol;
         this.wrapper = wrapper;
 
-        socket = new ServerSocket();
+        socket = newServerSocket();
 
         this.logger = System.getLogger("robaho.net.httpserver."+System.identityHashCode(this));
         java.util.logging.Logger.getLogger(this.logger.getName()).setFilter((LogRecord record) -> {
@@ -135,18 +142,33 @@ class ServerImpl {
             return true;
         });
 
+        int shards = ServerConfig.getAcceptorShards();
+        if (shards > 1 && !socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            logger.log(Level.WARNING, "SO_REUSEPORT not supported, using a single acceptor");
+            shards = 1;
+        }
+        sockets = new ServerSocket[shards];
+        sockets[0] = socket;
+        for (int i = 1; i < shards; i++) {
+            sockets[i] = newServerSocket();
+        }
+        if (shards > 1) {
+            for (var s : sockets) {
+                s.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+        }
+        stats = new ServerStats(shards);
+
         https = protocol.equalsIgnoreCase("https");
         contexts = new ContextList();
         if (addr != null) {
-            socket.bind(addr, backlog);
+            bindAll(addr, backlog);
             bound = true;
-            logger.log(Level.INFO,"server bound to "+socket.getLocalSocketAddress() + " with backlog "+backlog);
         }
-        dispatcher = new Dispatcher();
-        timer = new Timer("connection-cleaner", true);
-        timer.schedule(new ConnectionCleanerTask(), IDLE_TIMER_TASK_SCHEDULE, IDLE_TIMER_TASK_SCHEDULE);
+        idleSelector = ServerConfig.parkIdleConnections() ? new IdleSelector(this, logger, stats) : null;
+        wheel = new TimingWheel(logger, "HTTP-TimingWheel", TIMER_TICK);
+        timer = new Timer("activity-timer", true);
         timer.schedule(ActivityTimer.createTask(),750,750);
-        timer.schedule(Http2Exchange.createTask(),1000,1000);
         logger.log(Level.DEBUG, "HttpServer created " + protocol + " " + addr);
         if(Boolean.getBoolean("robaho.net.httpserver.EnableStats")) {
             createContext("/__stats",new StatsHandler());
@@ -162,6 +184,7 @@ class ServerImpl {
             var output = 
                 (
                 "Active Connections: "+allConnections.size()+"\n" +
+                (idleConnections != null ? "Idle Connections: "+idleConnections.size()+"\n" : "") +
                 stats.stats()+
                 http2Stats.stats()
                 ).getBytes();
@@ -193,11 +216,27 @@ class ServerImpl {
         if (addr == null) {
             throw new NullPointerException("null address");
         }
-        socket.bind(addr, backlog);
-        logger.log(Level.INFO,"server bound to "+socket.getLocalSocketAddress()+ " with backlog "+backlog);
+        bindAll(addr, backlog);
         bound = true;
     }
 
+    private static ServerSocket newServerSocket() throws IOException {
+        // parking idle connections requires access to the SocketChannel
+        return ServerConfig.parkIdleConnections() ? ServerSocketChannel.open().socket() : new ServerSocket();
+    }
+
+    /**
+     * bind all of the listening sockets. The additional shards are bound to the actual
+     * address of the first, so an ephemeral port is shared by all shards.
+     */
+    private void bindAll(InetSocketAddress addr, int backlog) throws IOException {
+        socket.bind(addr, backlog);
+        for (int i = 1; i < sockets.length; i++) {
+            sockets[i].bind(socket.getLocalSocketAddress(), backlog);
+        }
+        logger.log(Level.INFO,"server bound to "+socket.getLocalSocketAddress()+ " with backlog "+backlog+(sockets.length > 1 ? ", acceptor shards "+sockets.length : ""));
+    }
+
     public void start() {
         if (!bound || started || finished) {
             throw new IllegalStateException("server in wrong state");
@@ -206,9 +245,20 @@ class ServerImpl {
             executor = new DefaultExecutor();
         }
         logger.log(Level.INFO, "using " + executor + " as executor");
-        dispatcherThread = new Thread(null, dispatcher, "HTTP-Dispatcher", 0, false);
+        dispatcherThreads = new Thread[sockets.length];
+        for (int i = 0; i < sockets.length; i++) {
+            String name = sockets.length == 1 ? "HTTP-Dispatcher" : "HTTP-Dispatcher-" + i;
+            dispatcherThreads[i] = new Thread(null, new Dispatcher(i, sockets[i]), name, 0, false);
+        }
         started = true;
-        dispatcherThread.start();
+        wheel.start();
+        if (idleSelector != null) {
+            logger.log(Level.INFO, "parking idle connections on selector");
+            idleSelector.start(executor);
+        }
+        for (var t : dispatcherThreads) {
+            t.start();
+        }
     }
 
     public void setExecutor(Executor executor) {
@@ -258,9 +308,11 @@ class ServerImpl {
         }
         logger.log(Level.INFO, "server shutting down: " + protocol);
         finished = true;
-        try {
-            socket.close();
-        } catch (IOException e) {
+        for (var s : sockets) {
+            try {
+                s.close();
+            } catch (IOException e) {
+            }
         }
         if (executor instanceof DefaultExecutor de) {
             // since we created it, shut it done when stopping because it is private
@@ -275,19 +327,26 @@ class ServerImpl {
         }
         allConnections.clear();
         timer.cancel();
+        wheel.stop();
+        if (idleSelector != null) {
+            idleSelector.close();
+        }
 
-        if (dispatcherThread != null && dispatcherThread != Thread.currentThread()) {
-            try {
-                dispatcherThread.join();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.log(Level.TRACE, "ServerImpl.stop: ", e);
+        if (dispatcherThreads != null) {
+            for (var t : dispatcherThreads) {
+                if (t == Thread.currentThread()) {
+                    continue;
+                }
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.log(Level.TRACE, "ServerImpl.stop: ", e);
+                }
             }
         }
     }
 
-    Dispatcher dispatcher;
-
     public HttpContextImpl createContext(String path, HttpHandler handler) {
         if (handler == null || path == null) {
             throw new NullPointerException("null handler, or path parameter");
@@ -336,13 +395,23 @@ class ServerImpl {
 
     /**
      * The Dispatcher is responsible for accepting any connections and then
-     * using those connections to process incoming requests.
+     * using those connections to process incoming requests. There is one
+     * Dispatcher per listening socket.
      */
     class Dispatcher implements Runnable {
+        private final int shard;
+        private final ServerSocket socket;
+
+        Dispatcher(int shard, ServerSocket socket) {
+            this.shard = shard;
+            this.socket = socket;
+        }
+
         public void run() {
             while (true) {
                 try {
                     Socket s = socket.accept();
+                    stats.acceptCounts.incrementAndGet(shard);
                     try {
                         executor.execute(() -> {
                         try {
@@ -367,6 +436,8 @@ class ServerImpl {
             }
         }
         private void acceptConnection(Socket s) throws IOException {
+            // capture the raw socket before any SSL wrapping
+            Socket raw = s;
             if(logger.isLoggable(Level.TRACE)) {
                 logger.log(Level.TRACE, "accepted connection: " + s.toString());
             }
@@ -414,9 +485,13 @@ class ServerImpl {
                 s = sslSocket;
             }
 
-            HttpConnection c = new HttpConnection(s);
+            HttpConnection c = new HttpConnection(s, raw);
+            c.timeout = wheel.newTimeout(() -> checkTimeouts(c));
+            // until the first request arrives an http/1.1 connection gets the shorter deadline
+            c.noActivity = !http2;
             try {
                 allConnections.add(c);
+                updateTimeout(c);
 
                 if (http2) {
                     Http2Exchange t = new Http2Exchange(protocol, c);
@@ -441,6 +516,122 @@ class ServerImpl {
         logger.log(Level.TRACE, () -> "closing connection: " + conn.toString());
         conn.close();
         allConnections.remove(conn);
+        if (conn.timeout != null) {
+            conn.timeout.cancel();
+        }
+        if (idleConnections != null) {
+            idleConnections.remove(conn);
+        }
+    }
+
+    /**
+     * the connection is waiting for the next request, if this exceeds the maximum number of idle
+     * connections the least recently used idle connection is closed
+     */
+    private void connectionIdle(HttpConnection c) {
+        if (idleConnections == null) {
+            return;
+        }
+        HttpConnection eldest = idleConnections.add(c);
+        if (eldest != null) {
+            logger.log(Level.DEBUG, () -> "evicting idle connection " + eldest);
+            stats.idleEvictionCount.incrementAndGet();
+            closeConnection(eldest);
+        }
+    }
+
+    /**
+     * the connection is parked waiting for the next request. The deadline is re-armed, since it may have fired
+     * during the request with no in-request limit to reschedule it.
+     */
+    void connectionParked(HttpConnection c) {
+        c.inRequest = false;
+        updateTimeout(c);
+        connectionIdle(c);
+    }
+
+    private void connectionActive(HttpConnection c) {
+        if (idleConnections != null) {
+            idleConnections.remove(c);
+        }
+    }
+
+    /**
+     * arm the connection timeout for the earliest deadline of its current state. This must be called
+     * when the connection state changes in a way that may shorten the deadline. Deadlines that
+     * are relative to the last activity are re-evaluated when the timeout fires, so they do not
+     * need to be updated on every read or write.
+     */
+    void updateTimeout(HttpConnection c) {
+        updateTimeout(c, ActivityTimer.now());
+    }
+
+    private void updateTimeout(HttpConnection c, long now) {
+        long deadline = Long.MAX_VALUE;
+        long drainingAt = c.drainingAt;
+        if (drainingAt != 0) {
+            deadline = drainingAt + IDLE_INTERVAL / 2;
+        }
+        if (!c.inRequest) {
+            deadline = Math.min(deadline, c.lastActivityTime + (c.noActivity ? NEWLY_ACCEPTED_CONN_IDLE_INTERVAL : IDLE_INTERVAL));
+        } else {
+            long responseStartedAt = c.responseStartedAt;
+            if (MAX_RSP_TIME != -1 && responseStartedAt != 0) {
+                deadline = Math.min(deadline, responseStartedAt + MAX_RSP_TIME);
+            }
+            if (MAX_REQ_TIME != -1) {
+                deadline = Math.min(deadline, c.lastActivityTime + MAX_REQ_TIME);
+            }
+        }
+        if (deadline != Long.MAX_VALUE) {
+            c.timeout.scheduleBefore(deadline - now);
+        }
+    }
+
+    /**
+     * run by the timing wheel when a connection deadline is reached, closes the connection if it
+     * has been idle or exceeded other limits, otherwise re-arms the timeout
+     */
+    private void checkTimeouts(HttpConnection c) {
+        if (c.closed) {
+            closeConnection(c);
+            return;
+        }
+        long now = ActivityTimer.now();
+        if (c.drainingAt != 0 && now - c.drainingAt >= IDLE_INTERVAL / 2) {
+            closeConnection(c);
+            return;
+        }
+        if (!c.inRequest) {
+            if (c.noActivity && now - c.lastActivityTime >= NEWLY_ACCEPTED_CONN_IDLE_INTERVAL) {
+                logger.log(Level.WARNING, "closing newly accepted idle connection");
+                stats.idleCloseCount.incrementAndGet();
+                closeConnection(c);
+                return;
+            }
+            if (now - c.lastActivityTime >= IDLE_INTERVAL) {
+                logger.log(Level.DEBUG, "closing idle connection");
+                stats.idleCloseCount.incrementAndGet();
+                closeConnection(c);
+                return;
+            }
+        } else {
+            if (MAX_RSP_TIME != -1 && c.responseStartedAt != 0 && now - c.responseStartedAt >= MAX_RSP_TIME) {
+                logger.log(Level.WARNING, "closing connection due to response time");
+                stats.rspTimeoutCount.incrementAndGet();
+                // the handler is likely blocked writing to a slow client, so don't attempt to flush
+                c.abort();
+                closeConnection(c);
+                return;
+            }
+            if (MAX_REQ_TIME != -1 && now - c.lastActivityTime >= MAX_REQ_TIME) {
+                logger.log(Level.WARNING, "closing connection due to request processing time");
+                stats.reqTimeoutCount.incrementAndGet();
+                closeConnection(c);
+                return;
+            }
+        }
+        updateTimeout(c, now);
     }
 
     /* used to link to 2 or more Filter.Chains together */
@@ -462,7 +653,21 @@ class ServerImpl {
         final HttpConnection connection;
         final HTTP2Connection http2;
         final String protocol;
-
+        private TimingWheel.Timeout keepalive;
+
+        private static final long PING_INTERVAL = ServerConfig.http2PingIntervalMillis();
+        private static final long PING_TIMEOUT = ServerConfig.http2PingTimeoutMillis();
+        private static final long IDLE_TIMEOUT = ServerConfig.http2IdleTimeoutMillis();
+        private static final long MAX_AGE = ServerConfig.http2MaxConnectionAgeMillis();
+        private static final long MAX_AGE_GRACE = ServerConfig.http2MaxConnectionAgeGraceMillis();
+        // how often the streams are checked after a GOAWAY, to close the connection once they complete
+        private static final long DRAIN_CHECK_INTERVAL = 1000;
+
+        private final long createdAt = ActivityTimer.now();
+        // jittered, so connections opened together are not all sent a GOAWAY together
+        private final long maxAge = MAX_AGE == -1 ? -1 : MAX_AGE - ThreadLocalRandom.current().nextLong(MAX_AGE / 10 + 1);
+        private long pingSentAt;
+        private long goAwayAt;
         private static final Set<Http2Exchange> allHttp2Exchanges = Collections.newSetFromMap(new ConcurrentHashMap<>());
         static void debug() {
             for(var exchange : allHttp2Exchanges) {
@@ -483,26 +688,96 @@ class ServerImpl {
             http2 = new HTTP2Connection(conn,http2Stats,connection.getInputStream(), connection.getOutputStream(), this);
         }
 
-        static TimerTask createTask() {
-            return new TimerTask() {
-                @Override
-                public void run() {
-                    long now = System.currentTimeMillis();
-                    for(var exchange : allHttp2Exchanges) {
-                        if(exchange.connection.lastActivityTime + 1000 < now) {
-                            try {
-                                exchange.http2.sendPing();
-                            } catch (IOException ex) {
-                            }
-                        }
+        /**
+         * run by the timing wheel. The keepalive writes to the connection, which blocks if the peer stopped reading,
+         * so it is run on the executor rather than stalling the timeouts of every other connection.
+         */
+        private void dispatchKeepalive() {
+            try {
+                executor.execute(this::keepalive);
+            } catch (RejectedExecutionException e) {
+                // the server is stopping
+                closeConnection(connection);
+            }
+        }
+
+        /**
+         * run on the executor when the keepalive timeout expires. Sends a keepalive ping if the connection has been quiet and closes it if the ping
+         * is not acknowledged, sends a graceful GOAWAY once the connection is idle or too old, and closes it once
+         * the remaining streams complete.
+         */
+        private void keepalive() {
+            if (connection.closed) {
+                return;
+            }
+            long now = ActivityTimer.now();
+            try {
+                if (http2.isGoingAway()) {
+                    if (http2.activeStreams() == 0 || (MAX_AGE_GRACE != -1 && now - goAwayAt >= MAX_AGE_GRACE)) {
+                        logger.log(Level.DEBUG, () -> "closing http2 connection after GOAWAY "+http2);
+                        closeConnection(connection);
+                        return;
                     }
+                } else if (maxAge != -1 && now - createdAt >= maxAge) {
+                    http2Stats.ageGoAways.incrementAndGet();
+                    goAway(now);
+                } else if (IDLE_TIMEOUT != -1 && http2.idleMillis() >= IDLE_TIMEOUT) {
+                    http2Stats.idleGoAways.incrementAndGet();
+                    goAway(now);
                 }
-        };
-    }
+                if (http2.isPingOutstanding()) {
+                    if (now - pingSentAt >= PING_TIMEOUT) {
+                        logger.log(Level.DEBUG, () -> "closing http2 connection, ping not acknowledged "+http2);
+                        http2Stats.pingTimeouts.incrementAndGet();
+                        closeConnection(connection);
+                        return;
+                    }
+                } else if (PING_INTERVAL != -1 && now - connection.lastActivityTime >= PING_INTERVAL) {
+                    pingSentAt = now;
+                    http2.sendPing();
+                }
+            } catch (IOException ex) {
+                closeConnection(connection);
+                return;
+            }
+            scheduleKeepalive(now);
+        }
+
+        private void goAway(long now) throws IOException {
+            goAwayAt = now;
+            http2.goAway();
+        }
+
+        /** schedule the keepalive for the earliest deadline of the enabled policies */
+        private void scheduleKeepalive(long now) {
+            long next = Long.MAX_VALUE;
+            if (http2.isPingOutstanding()) {
+                next = pingSentAt + PING_TIMEOUT - now;
+            } else if (PING_INTERVAL != -1) {
+                next = connection.lastActivityTime + PING_INTERVAL - now;
+            }
+            if (http2.isGoingAway()) {
+                next = Math.min(next, DRAIN_CHECK_INTERVAL);
+            } else {
+                if (maxAge != -1) {
+                    next = Math.min(next, createdAt + maxAge - now);
+                }
+                if (IDLE_TIMEOUT != -1) {
+                    next = Math.min(next, IDLE_TIMEOUT - http2.idleMillis());
+                }
+            }
+            if (next != Long.MAX_VALUE) {
+                keepalive.schedule(Math.max(next, 1));
+            }
+        }
 
         @Override
         public void run() {
             allHttp2Exchanges.add(this);
+            // a multiplexed connection is never considered idle for eviction, it is governed by the idle timeout and pings
+            connectionActive(connection);
+            keepalive = wheel.newTimeout(this::dispatchKeepalive);
+            scheduleKeepalive(ActivityTimer.now());
 
             try {
                 if(!http2.hasProperPreface()) {
@@ -527,6 +802,7 @@ class ServerImpl {
                 } catch (Throwable t) {
                     logger.log(Level.WARNING, "error closing http2 connection "+http2, t);
                 }
+                keepalive.cancel();
                 allHttp2Exchanges.remove(this);
             }
         }
@@ -549,7 +825,6 @@ class ServerImpl {
             String scheme = https ? "https" : "http";
             String authority = request.getFirst(":authority");
             String path = request.getFirst(":path");
-            String query = request.getFirst(":query");
 
             logger.log(Level.TRACE, () -> "http2 stream started "+stream.toString());
 
@@ -559,9 +834,9 @@ class ServerImpl {
 
             request.set("Host",authority);
 
-            URI uri;
+            RequestTarget target;
             try {
-                uri = new URI(scheme,authority,path,query,null);
+                target = RequestTarget.parse(scheme,authority,path);
             } catch (URISyntaxException ex) {
                 throw new IOException("invalid uri",ex);
             }
@@ -579,7 +854,7 @@ class ServerImpl {
                 }
             }
 
-            String uriPath = Optional.ofNullable(uri.getPath()).orElse("/");
+            String uriPath = target.path();
             HttpContextImpl ctx = contexts.findContext(protocol, uriPath);
             if (ctx == null) {
                 logger.log(Level.DEBUG, "No context found for request "+uriPath+", rejecting as not found");
@@ -589,7 +864,7 @@ class ServerImpl {
                 return;
             }
 
-            logger.log(Level.TRACE,() -> "http2 request on "+connection+" "+method+" for "+uri);
+            logger.log(Level.TRACE,() -> "http2 request on "+connection+" "+method+" for "+target);
 
             final List<Filter> sf = ctx.getSystemFilters();
             final List<Filter> uf = ctx.getFilters();
@@ -599,9 +874,9 @@ class ServerImpl {
 
             try {
                 if (https) {
-                    uc.doFilter(new Http2ExchangeImpl(stream,uri,method,ctx,request,response,in,out));
+                    uc.doFilter(new Http2ExchangeImpl(stream,target,method,ctx,request,response,in,out));
                 } else {
-                    uc.doFilter(new Http2ExchangeImpl(stream,uri,method,ctx,request,response,in,out));
+                    uc.doFilter(new Http2ExchangeImpl(stream,target,method,ctx,request,response,in,out));
                 }
             } catch (IOException e) {
             } catch (Exception e) {
@@ -638,6 +913,11 @@ class ServerImpl {
                     if (connection.closed) {
                         break;
                     }
+                    if (idleSelector != null && idleSelector.park(connection, this)) {
+                        // the selector will resubmit this exchange when the next request arrives
+                        logger.log(Level.TRACE, () -> "exchange parked "+connection.toString());
+                        return;
+                    }
                 } catch (IOException e) {
                     // these are common with clients breaking connections etc
                     logger.log(Level.TRACE, "ServerImpl IOException", e);
@@ -673,11 +953,18 @@ class ServerImpl {
             logger.log(Level.TRACE,"reading request");
 
             connection.inRequest = false;
+            connection.responseStartedAt = 0;
+            updateTimeout(connection);
+            // a resumed parked connection is already tracked as idle from the time it was parked
+            if (!connection.idle) {
+                connectionIdle(connection);
+            }
 
             Request req = new Request(rawin, rawout);
-            final String requestLine = req.requestLine();
+            connection.noActivity = false;
+            final String method = req.method();
 
-            if("PRI * HTTP/2.0".equals(requestLine) && ServerConfig.http2OverNonSSL()) {
+            if("PRI".equals(method) && "*".equals(req.target()) && "HTTP/2.0".equals(req.version()) && ServerConfig.http2OverNonSSL()) {
                 logger.log(Level.DEBUG,"found http2 request on non-SSL assuming prior knowledge");
                 Http2Exchange exchange = new Http2Exchange(protocol, connection);
                 exchange.run();
@@ -685,8 +972,16 @@ class ServerImpl {
             }
 
             connection.inRequest = true;
+            updateTimeout(connection);
+            connectionActive(connection);
 
-            if (requestLine == null || "".equals(requestLine)) {
+            if (req.requestLineTooLong()) {
+                stats.headersTooLargeCount.incrementAndGet();
+                reject(Code.HTTP_REQ_TOO_LONG, req.requestLine(),
+                        "Request line exceeds the maximum request header size");
+                return;
+            }
+            if (method == null && "".equals(req.requestLine())) {
                 /* connection closed */
                 logger.log(Level.DEBUG, "no request line: closing");
                 closeConnection(connection);
@@ -695,33 +990,28 @@ class ServerImpl {
             connection.requestCount.incrementAndGet();
             stats.requestCount.incrementAndGet();
 
-            logger.log(Level.DEBUG, () -> "Exchange request line: "+ requestLine);
-            int space = requestLine.indexOf(" ");
-            if (space == -1) {
-                reject(Code.HTTP_BAD_REQUEST,
-                        requestLine, "Bad request line");
-                return;
-            }
-            String method = requestLine.substring(0, space);
-            int start = space + 1;
-            space = requestLine.indexOf(" ", start);
-            if (space == -1) {
+            logger.log(Level.DEBUG, () -> "Exchange request line: "+ req.requestLine());
+            if (method == null) {
                 reject(Code.HTTP_BAD_REQUEST,
-                        requestLine, "Bad request line");
+                        req.requestLine(), "Bad request line");
                 return;
             }
-            String uriStr = requestLine.substring(start, space);
-            URI uri;
+            RequestTarget target;
             try {
-                uri = new URI(uriStr);
+                target = RequestTarget.parse(req.target());
             } catch (URISyntaxException e3) {
                 reject(Code.HTTP_BAD_REQUEST,
-                        requestLine, "URISyntaxException thrown");
+                        req.requestLine(), "URISyntaxException thrown");
                 return;
             }
-            start = space + 1;
-            String version = requestLine.substring(start);
+            String version = req.version();
             Headers headers = req.headers();
+            if (req.headersTooLarge()) {
+                stats.headersTooLargeCount.incrementAndGet();
+                reject(Code.HTTP_HEADER_FIELDS_TOO_LARGE, req.requestLine(),
+                        "Request headers exceed the maximum count or size");
+                return;
+            }
 
             /* check key for illegal characters, impossible since Headers class validates on mutation */
             // for (var k : headers.keySet()) {
@@ -734,7 +1024,7 @@ class ServerImpl {
             /* checks for unsupported combinations of lengths and encodings */
             if (headers.containsKey("Content-length")
                     && (headers.containsKey("Transfer-encoding") || headers.get("Content-length").size() > 1)) {
-                reject(Code.HTTP_BAD_REQUEST, requestLine,
+                reject(Code.HTTP_BAD_REQUEST, req.requestLine(),
                         "Conflicting or malformed headers detected");
                 return;
             }
@@ -749,7 +1039,7 @@ class ServerImpl {
                     clen = -1L;
                 } else {
                     reject(Code.HTTP_NOT_IMPLEMENTED,
-                            requestLine, "Unsupported Transfer-Encoding value");
+                            req.requestLine(), "Unsupported Transfer-Encoding value");
                     return;
                 }
             } else {
@@ -759,31 +1049,30 @@ class ServerImpl {
                         clen = Long.parseLong(headerValue);
                     } catch (NumberFormatException e2) {
                         reject(Code.HTTP_BAD_REQUEST,
-                                requestLine, "NumberFormatException thrown");
+                                req.requestLine(), "NumberFormatException thrown");
                         return;
                     }
                     if (clen < 0) {
-                        reject(Code.HTTP_BAD_REQUEST, requestLine,
+                        reject(Code.HTTP_BAD_REQUEST, req.requestLine(),
                                 "Illegal Content-length value");
                         return;
                     }
                 }
             }
-            logger.log(Level.TRACE,() -> "protocol "+protocol+" uri "+uri+" headers "+headers);
-            String uriPath = Optional.ofNullable(uri.getPath()).orElse("/");
-            ctx = contexts.findContext(protocol, uriPath);
+            logger.log(Level.TRACE,() -> "protocol "+protocol+ " uri "+target+" headers "+headers);
+            ctx = contexts.findContext(protocol, target.path());
             if (ctx == null) {
                 reject(Code.HTTP_NOT_FOUND,
-                        requestLine, "No context found for request");
+                        req.requestLine(), "No context found for request");
                 return;
             }
             connection.setContext(ctx);
             if (ctx.getHandler() == null) {
                 reject(Code.HTTP_INTERNAL_ERROR,
-                        requestLine, "No handler for context");
+                        req.requestLine(), "No handler for context");
                 return;
             }
-            tx = new ExchangeImpl(method, uri, req, clen, connection);
+            tx = new ExchangeImpl(method, target, req, clen, connection);
             String chdr = headers.getFirst("Connection");
             Headers rheaders = tx.getResponseHeaders();
 
@@ -814,7 +1103,7 @@ class ServerImpl {
              */
             String exp = headers.getFirst("Expect");
             if (exp != null && exp.equalsIgnoreCase("100-continue")) {
-                logReply(100, requestLine, null);
+                logReply(100, req.requestLine(), null);
                 sendReply(
                         Code.HTTP_CONTINUE, false, null);
             }
@@ -893,6 +1182,13 @@ class ServerImpl {
 
     }
 
+    void logReply(int code, Request request, String text) {
+        // avoid building the request line unless it is logged
+        if (logger.isLoggable(Level.DEBUG)) {
+            logReply(code, request.requestLine(), text);
+        }
+    }
+
     void logReply(int code, String requestStr, String text) {
         if (!logger.isLoggable(Level.DEBUG)) {
             return;
@@ -918,39 +1214,6 @@ class ServerImpl {
         return wrapper;
     }
 
-    /**
-     * Responsible for closing connections that have been idle or exceed other
-     * limits
-     */
-    class ConnectionCleanerTask extends TimerTask {
-
-        @Override
-        public void run() {
-            long now = ActivityTimer.now();
-
-            for (var c : allConnections) {
-                if (c.drainingAt != 0 && now- c.drainingAt >= IDLE_INTERVAL / 2) {
-                    closeConnection(c);
-                }
-                if (now- c.lastActivityTime >= IDLE_INTERVAL && !c.inRequest) {
-                    logger.log(Level.DEBUG, "closing idle connection");
-                    stats.idleCloseCount.incrementAndGet();
-                    closeConnection(c);
-                    // idle.add(c);
-                } else if (c.noActivity && (now - c.lastActivityTime >= NEWLY_ACCEPTED_CONN_IDLE_INTERVAL)) {
-                    logger.log(Level.WARNING, "closing newly accepted idle connection");
-                    closeConnection(c);
-                } else if (MAX_REQ_TIME != -1 && c.inRequest && (now - c.lastActivityTime >= MAX_REQ_TIME)) {
-                    logger.log(Level.WARNING, "closing connection due to request processing time");
-                    closeConnection(c);
-                }
-                // TODO is MAX_RSP_TIME needed?
-            }
-            // close idle connections if over limit
-            // idle.stream().limit(Math.max(idle.size() - MAX_IDLE_CONNECTIONS, 0)).forEach(c -> closeConnection(c));
-        }
-    }
-
     /**
      * Converts and returns the passed {@code secs} as milli seconds. If the
      * passed {@code secs} is negative or zero or if the conversion from seconds
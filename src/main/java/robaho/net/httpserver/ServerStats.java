@@ -1,6 +1,7 @@
 package robaho.net.httpserver;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 class ServerStats {
     final AtomicLong connectionCount = new AtomicLong();
@@ -8,11 +9,22 @@ class ServerStats {
     final AtomicLong handleExceptionCount = new AtomicLong();
     final AtomicLong socketExceptionCount = new AtomicLong();
     final AtomicLong idleCloseCount = new AtomicLong();
+    final AtomicLong idleEvictionCount = new AtomicLong();
+    final AtomicLong reqTimeoutCount = new AtomicLong();
+    final AtomicLong rspTimeoutCount = new AtomicLong();
     final AtomicLong replyErrorCount = new AtomicLong();
+    final AtomicLong headersTooLargeCount = new AtomicLong();
     final AtomicLong maxConnectionsExceededCount = new AtomicLong();
+    final AtomicLong parkedCount = new AtomicLong();
+    // accepted connections per acceptor shard
+    final AtomicLongArray acceptCounts;
 
     private volatile long lastStatsTime = System.currentTimeMillis();
 
+    ServerStats(int shards) {
+        acceptCounts = new AtomicLongArray(shards);
+    }
+
     public String stats() {
         long now = System.currentTimeMillis();
         double secs = (now-lastStatsTime)/1000.0;
@@ -20,6 +32,11 @@ class ServerStats {
 
         long _requests = requestCount.getAndSet(0);
 
+        StringBuilder accepts = new StringBuilder();
+        for (int i = 0; i < acceptCounts.length(); i++) {
+            accepts.append("Shard "+i+" Accepts/sec: "+(long)(acceptCounts.getAndSet(i,0)/secs)+"\n");
+        }
+
         return
                 "Connections Since: "+connectionCount.getAndSet(0)+"\n" +
                 "Requests Since: "+_requests+"\n" +
@@ -28,6 +45,12 @@ class ServerStats {
                 "Total Socket Exceptions: "+socketExceptionCount.get()+"\n"+
                 "Total Max Connections Exceeded: "+maxConnectionsExceededCount.get()+"\n"+
                 "Total Idle Closes: "+idleCloseCount.get()+"\n"+
-                "Total Reply Errors: "+replyErrorCount.get()+"\n";
+                "Total Idle Evictions: "+idleEvictionCount.get()+"\n"+
+                "Total Request Timeouts: "+reqTimeoutCount.get()+"\n"+
+                "Total Response Timeouts: "+rspTimeoutCount.get()+"\n"+
+                "Idle Parks Since: "+parkedCount.getAndSet(0)+"\n"+
+                "Total Reply Errors: "+replyErrorCount.get()+"\n"+
+                "Total Oversized Request Headers: "+headersTooLargeCount.get()+"\n"+
+                accepts;
     }
 }
\ No newline at end of file
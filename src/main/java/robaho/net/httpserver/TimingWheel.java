@@ -0,0 +1,234 @@
+package robaho.net.httpserver;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * a hierarchical timing wheel. Scheduling and cancelling a timeout is O(1) regardless
+ * of the number of outstanding timeouts, and each tick only visits the timeouts that
+ * are due (plus an occasional cascade of a higher level slot into the lower levels).
+ * <p>
+ * Level 0 has one slot per tick, each higher level has slots covering all of the
+ * slots of the level below. A timeout is placed in the lowest level that can represent
+ * its deadline, and is moved down as the wheel turns.
+ * <p>
+ * The timeout tasks are run on the wheel thread, so they must not block for long. A
+ * task may be run even if it was cancelled concurrently with its expiration, so tasks
+ * should re-check the state they are guarding.
+ */
+class TimingWheel implements Runnable {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final Logger logger;
+    private final String name;
+    private final long tickMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Timeout[][] wheel = new Timeout[LEVELS][SLOTS];
+    private List<Timeout> expired = new ArrayList<>();
+    private List<Timeout> running = new ArrayList<>();
+    // the last tick processed
+    private long tick;
+    private Thread thread;
+    private volatile boolean finished;
+
+    /**
+     * a schedulable timeout. The same instance can be rescheduled any number of times.
+     */
+    final class Timeout {
+        private final Runnable task;
+        private long deadline;
+        private int level = -1;
+        private int slot;
+        private Timeout prev, next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * schedule (or reschedule) the timeout to run after delay milliseconds
+         */
+        void schedule(long delayMillis) {
+            long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+            lock.lock();
+            try {
+                if (level >= 0) {
+                    unlink(this);
+                }
+                deadline = tick + ticks;
+                insert(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * schedule the timeout to run after delay milliseconds, unless it is already scheduled
+         * to run before then
+         */
+        void scheduleBefore(long delayMillis) {
+            long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+            lock.lock();
+            try {
+                if (level >= 0) {
+                    if (deadline <= tick + ticks) {
+                        return;
+                    }
+                    unlink(this);
+                }
+                deadline = tick + ticks;
+                insert(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                if (level >= 0) {
+                    unlink(this);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    TimingWheel(Logger logger, String name, long tickMillis) {
+        this.logger = logger;
+        this.name = name;
+        this.tickMillis = Math.max(1, tickMillis);
+    }
+
+    Timeout newTimeout(Runnable task) {
+        return new Timeout(task);
+    }
+
+    void start() {
+        thread = new Thread(null, this, name, 0, false);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        finished = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        final long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        final long start = System.nanoTime();
+        while (!finished) {
+            long elapsed = (System.nanoTime() - start) / tickNanos;
+            lock.lock();
+            try {
+                while (tick < elapsed) {
+                    advance();
+                }
+                List<Timeout> tmp = running;
+                running = expired;
+                expired = tmp;
+            } finally {
+                lock.unlock();
+            }
+            for (var t : running) {
+                try {
+                    t.task.run();
+                } catch (Throwable e) {
+                    logger.log(Level.WARNING, "timeout task failed", e);
+                }
+            }
+            running.clear();
+            long sleep = start + (elapsed + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }
+    }
+
+    /** advance the wheel one tick, must be called with the lock held */
+    private void advance() {
+        tick++;
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * SLOT_BITS;
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                cascade(level, (int) ((tick >>> shift) & SLOT_MASK));
+            }
+        }
+        int slot = (int) (tick & SLOT_MASK);
+        Timeout t = wheel[0][slot];
+        wheel[0][slot] = null;
+        while (t != null) {
+            Timeout next = t.next;
+            t.prev = t.next = null;
+            t.level = -1;
+            expired.add(t);
+            t = next;
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout t = wheel[level][slot];
+        wheel[level][slot] = null;
+        while (t != null) {
+            Timeout next = t.next;
+            t.prev = t.next = null;
+            t.level = -1;
+            insert(t);
+            t = next;
+        }
+    }
+
+    private void insert(Timeout t) {
+        if (t.deadline <= tick) {
+            // only possible when cascading
+            expired.add(t);
+            return;
+        }
+        int level = 0;
+        int shift = 0;
+        while (level < LEVELS - 1 && (t.deadline >>> shift) - (tick >>> shift) >= SLOTS) {
+            level++;
+            shift += SLOT_BITS;
+        }
+        // deadlines beyond the range of the top level are parked in its furthest slot and re-placed when it cascades
+        long index = Math.min(t.deadline >>> shift, (tick >>> shift) + SLOTS - 1);
+        int slot = (int) (index & SLOT_MASK);
+        t.level = level;
+        t.slot = slot;
+        Timeout head = wheel[level][slot];
+        t.next = head;
+        if (head != null) {
+            head.prev = t;
+        }
+        wheel[level][slot] = t;
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            wheel[t.level][t.slot] = t.next;
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = t.next = null;
+        t.level = -1;
+    }
+}
@@ -24,6 +24,10 @@
  */
 package robaho.net.httpserver;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 /**
  * Provides utility methods for checking header field names and quoted strings.
  */
@@ -114,4 +118,32 @@ public class Utils {
 
         return false;
     }
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * find a byte in a region of an array, examining 8 bytes at a time.
+     *
+     * @return the index of the first occurrence of value in buf[from,to) or -1
+     */
+    static int indexOf(byte[] buf, int from, int to, byte value) {
+        final long pattern = (value & 0xFFL) * ONES;
+        int i = from;
+        for (; i <= to - 8; i += 8) {
+            long word = (long) LONGS.get(buf, i) ^ pattern;
+            // the lowest set high bit marks the first zero byte, higher bits may be false positives
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
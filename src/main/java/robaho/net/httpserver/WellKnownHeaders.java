@@ -0,0 +1,134 @@
+package robaho.net.httpserver;
+
+/**
+ * a static table of common header names in normalized form (first character upper case,
+ * rest lower case). OptimizedHeaders stores these in fixed slots rather than hashing them,
+ * and the request parser resolves the raw bytes of a name to its slot without allocating.
+ */
+final class WellKnownHeaders {
+    static final String[] NAMES = {
+        "Accept",
+        "Accept-charset",
+        "Accept-encoding",
+        "Accept-language",
+        "Authorization",
+        "Cache-control",
+        "Connection",
+        "Content-encoding",
+        "Content-length",
+        "Content-type",
+        "Cookie",
+        "Date",
+        "Etag",
+        "Expect",
+        "Host",
+        "If-modified-since",
+        "If-none-match",
+        "Keep-alive",
+        "Last-modified",
+        "Location",
+        "Origin",
+        "Pragma",
+        "Range",
+        "Referer",
+        "Sec-fetch-dest",
+        "Sec-fetch-mode",
+        "Sec-fetch-site",
+        "Sec-websocket-key",
+        "Sec-websocket-version",
+        "Server",
+        "Set-cookie",
+        "Te",
+        "Transfer-encoding",
+        "Upgrade",
+        "User-agent",
+        "Vary",
+        "X-forwarded-for",
+    };
+
+    static final int COUNT = NAMES.length;
+
+    private static final int TABLE_SIZE = 128;
+    private static final int MASK = TABLE_SIZE - 1;
+    // open addressed table of index+1 into NAMES, 0 is empty
+    private static final byte[] TABLE = new byte[TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < COUNT; i++) {
+            int index = spread(NAMES[i].hashCode());
+            while (TABLE[index] != 0) {
+                index = (index + 1) & MASK;
+            }
+            TABLE[index] = (byte) (i + 1);
+        }
+    }
+
+    private WellKnownHeaders() {}
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 7) ^ (hash >>> 16)) & MASK;
+    }
+
+    /**
+     * @return the slot of the normalized header name, or -1 if it is not well-known
+     */
+    static int index(String normalized) {
+        int index = spread(normalized.hashCode());
+        int slot;
+        while ((slot = TABLE[index]) != 0) {
+            String name = NAMES[slot - 1];
+            if (name == normalized || name.equals(normalized)) {
+                return slot - 1;
+            }
+            index = (index + 1) & MASK;
+        }
+        return -1;
+    }
+
+    /**
+     * resolve the header name in buf[start,end) ignoring case. The hash of the normalized form
+     * is computed from the bytes, so no String is created.
+     *
+     * @return the slot of the header name, or -1 if it is not well-known
+     */
+    static int index(byte[] buf, int start, int end) {
+        int len = end - start;
+        if (len == 0) {
+            return -1;
+        }
+        int hash = toUpper(buf[start]);
+        for (int i = start + 1; i < end; i++) {
+            hash = 31 * hash + toLower(buf[i]);
+        }
+        int index = spread(hash);
+        int slot;
+        while ((slot = TABLE[index]) != 0) {
+            String name = NAMES[slot - 1];
+            if (name.length() == len && matches(name, buf, start)) {
+                return slot - 1;
+            }
+            index = (index + 1) & MASK;
+        }
+        return -1;
+    }
+
+    private static boolean matches(String name, byte[] buf, int start) {
+        if (name.charAt(0) != toUpper(buf[start])) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (name.charAt(i) != toLower(buf[start + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toUpper(byte b) {
+        return (b >= 'a' && b <= 'z') ? b - 32 : b & 0xFF;
+    }
+
+    private static int toLower(byte b) {
+        return (b >= 'A' && b <= 'Z') ? b + 32 : b & 0xFF;
+    }
+}
@@ -0,0 +1,437 @@
+package robaho.net.httpserver.http2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import robaho.net.httpserver.http2.frame.FrameFlag;
+import robaho.net.httpserver.http2.frame.FrameFlag.FlagSet;
+import robaho.net.httpserver.http2.frame.FrameHeader;
+import robaho.net.httpserver.http2.frame.FrameType;
+
+/**
+ * writes the frames of all streams to the connection. Frames are added to a lock-free queue, and whichever
+ * thread acquires the writer lock drains the queue, so the frames of concurrent streams are written in batches
+ * with a single flush, and a stream never blocks waiting for the write of another stream.
+ * <p>
+ * Control and HEADERS frames are written first. DATA frames are queued per stream, and the streams are scheduled
+ * by their RFC 9218 urgency, so a large low priority response cannot starve a critical one. Incremental streams of
+ * the same urgency are written a frame at a time in round-robin order, non-incremental streams one after another.
+ * <p>
+ * A thread writing a control frame, e.g. the connection reader sending a SETTINGS ack or WINDOW_UPDATE, only writes
+ * a few of the queued DATA frames, and hands the rest to the executor so frame processing is not stalled behind the
+ * bodies of other streams.
+ * <p>
+ * The DATA copied while another thread is writing is bounded per connection. Once the bound is reached a stream
+ * writing DATA waits for the writer lock and writes directly, so a peer that stops reading blocks the writing
+ * handlers instead of growing the heap.
+ * <p>
+ * A queued frame must not reference data owned by the caller, since it may be written after the call returns.
+ */
+class ConnectionWriter {
+    interface Frame {
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * the DATA frames of a stream waiting to be written. A stream with queued frames is scheduled in the bucket of
+     * its urgency.
+     */
+    static final class StreamQueue {
+        private final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // set when the stream is reset, its queued and later frames are dropped
+        private volatile boolean discarded;
+        // a change takes effect when the stream is next scheduled
+        volatile Priority priority;
+
+        StreamQueue(Priority priority) {
+            this.priority = priority;
+        }
+    }
+
+    private static final FlagSet END_STREAM = FlagSet.of(FrameFlag.END_STREAM);
+
+    // marks that the frames before it must be flushed once the queue is drained
+    private static final Frame FLUSH = os -> {};
+    // the DATA frames written by a control frame writer before the rest are handed to the executor
+    private static final int CONTROL_DRAIN_FRAMES = 4;
+    // the copied DATA bytes that may be queued before writers wait for the lock
+    static final long MAX_QUEUED_DATA_BYTES = 1024 * 1024;
+
+    private final OutputStream outputStream;
+    private final HTTP2Stats stats;
+    private final ConcurrentLinkedQueue<Frame> queue = new ConcurrentLinkedQueue<>();
+    // streams with queued DATA frames by urgency, only the lock holder removes streams
+    private final ConcurrentLinkedDeque<StreamQueue>[] buckets;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Executor executor;
+    // set while a drain is pending on the executor
+    private final AtomicBoolean handoff = new AtomicBoolean();
+    private final AtomicLong queuedDataBytes = new AtomicLong();
+    private volatile IOException failure;
+
+    /** the DATA frames left by a control frame writer are written by that thread once it releases the lock */
+    ConnectionWriter(OutputStream outputStream, HTTP2Stats stats) {
+        this(outputStream, stats, Runnable::run);
+    }
+
+    /**
+     * @param executor runs the drain of the DATA frames left by a control frame writer
+     */
+    ConnectionWriter(OutputStream outputStream, HTTP2Stats stats, Executor executor) {
+        this.outputStream = outputStream;
+        this.stats = stats;
+        this.executor = executor;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ConcurrentLinkedDeque<StreamQueue>[] buckets = new ConcurrentLinkedDeque[Priority.LEVELS];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ConcurrentLinkedDeque<>();
+        }
+        this.buckets = buckets;
+    }
+
+    /**
+     * queue the frame, writing it and any other queued control frames if no other thread is writing
+     * @param flush if true the connection is flushed once the frame is written and the queue is empty
+     */
+    void write(Frame frame, boolean flush) throws IOException {
+        checkFailure();
+        queue.add(frame);
+        if (flush) {
+            queue.add(FLUSH);
+        }
+        tryDrain(CONTROL_DRAIN_FRAMES);
+    }
+
+    /**
+     * queue a frame that must be ordered with the DATA frames of the stream, writing the queued frames if no other
+     * thread is writing
+     */
+    void write(StreamQueue stream, Frame frame, boolean flush) throws IOException {
+        checkFailure();
+        enqueue(stream, frame);
+        if (flush) {
+            queue.add(FLUSH);
+        }
+        tryDrain();
+    }
+
+    /**
+     * write a DATA frame. If no other thread is writing and no DATA frames are waiting the data is written directly,
+     * otherwise it is copied and queued. If the queued DATA exceeds {@link #MAX_QUEUED_DATA_BYTES} the caller waits
+     * for the writer lock, writes the queued frames and then the data directly.
+     */
+    void writeData(StreamQueue stream, int streamId, FlagSet flags, byte[] b, int off, int len, boolean flush) throws IOException {
+        checkFailure();
+        if (stream.discarded) {
+            return;
+        }
+        stats.dataBytesSent[stream.priority.urgency()].addAndGet(len);
+        boolean locked = lock.tryLock();
+        boolean wait = !locked && queuedDataBytes.get() >= MAX_QUEUED_DATA_BYTES;
+        if (wait) {
+            lock.lock();
+            locked = true;
+        }
+        if (!locked || (!wait && hasQueuedData())) {
+            if (locked) {
+                lock.unlock();
+            }
+            write(stream, new QueuedData(streamId, flags, Arrays.copyOfRange(b, off, off + len)), flush);
+            return;
+        }
+        try {
+            checkFailure();
+            // frames queued before this one must be written first
+            drain();
+            if (stream.discarded) {
+                return;
+            }
+            try {
+                FrameHeader.writeTo(outputStream, len, FrameType.DATA, flags, streamId);
+                outputStream.write(b, off, len);
+            } catch (IOException e) {
+                fail(e);
+            }
+            stats.framesSent.incrementAndGet();
+            if (flush) {
+                queue.add(FLUSH);
+            }
+            drain();
+        } finally {
+            lock.unlock();
+        }
+        tryDrain();
+    }
+
+    /**
+     * queue a complete response, the HEADERS frame and a single DATA frame carrying END_STREAM, as one entry so both
+     * are written in a single pass. The entry is ordered with the control frames rather than scheduled by urgency,
+     * so it must only be used for a stream that has no queued DATA frames and a body of at most one frame.
+     */
+    void writeResponse(StreamQueue stream, byte[] headers, int streamId, byte[] body, int len, boolean flush) throws IOException {
+        checkFailure();
+        stats.dataBytesSent[stream.priority.urgency()].addAndGet(len);
+        // the entry is counted as a single frame when written
+        stats.framesSent.incrementAndGet();
+        queue.add(os -> {
+            if (stream.discarded) {
+                return;
+            }
+            os.write(headers);
+            FrameHeader.writeTo(os, len, FrameType.DATA, END_STREAM, streamId);
+            os.write(body, 0, len);
+        });
+        if (flush) {
+            queue.add(FLUSH);
+        }
+        tryDrain();
+    }
+
+    /**
+     * request a flush of the queued frames, without waiting
+     */
+    void flush() throws IOException {
+        checkFailure();
+        queue.add(FLUSH);
+        tryDrain();
+    }
+
+    /**
+     * write the frame and flush, waiting for any other thread that is writing
+     */
+    void writeAndWait(Frame frame) throws IOException {
+        checkFailure();
+        queue.add(frame);
+        queue.add(FLUSH);
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+        tryDrain();
+    }
+
+    /**
+     * write a RST_STREAM for the stream. Its queued frames are dropped, and any frames written for it later, so no
+     * frame of the stream follows the reset.
+     */
+    void reset(StreamQueue stream, Frame frame) throws IOException {
+        discard(stream);
+        write(frame, true);
+    }
+
+    /** drop the queued and later frames of the stream, e.g. when the peer reset it */
+    void discard(StreamQueue stream) {
+        stream.discarded = true;
+        Frame frame;
+        while ((frame = stream.frames.poll()) != null) {
+            if (frame instanceof QueuedData data) {
+                queuedDataBytes.addAndGet(-data.data.length);
+            }
+        }
+    }
+
+    private void enqueue(StreamQueue stream, Frame frame) {
+        if (stream.discarded) {
+            return;
+        }
+        if (frame instanceof QueuedData data) {
+            queuedDataBytes.addAndGet(data.data.length);
+        }
+        stream.frames.add(frame);
+        if (stream.scheduled.compareAndSet(false, true)) {
+            buckets[stream.priority.urgency()].addLast(stream);
+        }
+    }
+
+    private boolean hasQueuedData() {
+        for (var bucket : buckets) {
+            if (!bucket.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("connection write failed", e);
+        }
+    }
+
+    /**
+     * drain the queue if no other thread is writing. The queue is checked again after releasing the lock, since
+     * a frame may have been added while the lock was held and the thread that added it failed to acquire it.
+     */
+    private void tryDrain() throws IOException {
+        tryDrain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxDataFrames the DATA frames to write before handing the remaining frames to the executor
+     */
+    private void tryDrain(int maxDataFrames) throws IOException {
+        while ((!queue.isEmpty() || hasQueuedData()) && lock.tryLock()) {
+            boolean drained;
+            try {
+                drained = drain(maxDataFrames);
+            } finally {
+                lock.unlock();
+            }
+            if (!drained) {
+                handoff();
+                return;
+            }
+        }
+    }
+
+    /** write the remaining frames on the executor, unless a drain is already pending */
+    private void handoff() throws IOException {
+        if (!handoff.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable drain = () -> {
+            handoff.set(false);
+            try {
+                tryDrain();
+            } catch (IOException e) {
+                // recorded as the failure, which is reported to the next writer
+            }
+        };
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException e) {
+            drain.run();
+        }
+    }
+
+    /** must hold the lock */
+    private void drain() throws IOException {
+        drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * must hold the lock
+     * @return false if frames remain since maxDataFrames were written
+     */
+    private boolean drain(int maxDataFrames) throws IOException {
+        boolean flush = false;
+        int dataFrames = 0;
+        Frame frame;
+        do {
+            while (true) {
+                while ((frame = queue.poll()) != null) {
+                    if (frame == FLUSH) {
+                        flush = true;
+                    } else {
+                        writeTo(frame);
+                    }
+                }
+                if (dataFrames == maxDataFrames) {
+                    break;
+                }
+                // a single DATA frame is written at a time, so newly queued control frames and higher urgency streams go first
+                StreamQueue stream = nextStream();
+                if (stream == null) {
+                    break;
+                }
+                writeNext(stream);
+                dataFrames++;
+            }
+            if (flush) {
+                flush = false;
+                try {
+                    outputStream.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+                stats.flushes.incrementAndGet();
+            }
+        } while (dataFrames < maxDataFrames && (!queue.isEmpty() || hasQueuedData()));
+        return dataFrames < maxDataFrames || (queue.isEmpty() && !hasQueuedData());
+    }
+
+    private StreamQueue nextStream() {
+        for (var bucket : buckets) {
+            StreamQueue stream = bucket.poll();
+            if (stream != null) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    /** must hold the lock */
+    private void writeNext(StreamQueue stream) throws IOException {
+        Frame frame = stream.frames.poll();
+        if (frame instanceof QueuedData data) {
+            queuedDataBytes.addAndGet(-data.data.length);
+        }
+        // a frame polled before the stream was discarded is written before the reset, which is queued after the flag is set
+        if (frame != null && !stream.discarded) {
+            writeTo(frame);
+        }
+        if (stream.frames.isEmpty()) {
+            stream.scheduled.set(false);
+            // a frame added before the flag was cleared would not have scheduled the stream
+            if (stream.frames.isEmpty() || !stream.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        var bucket = buckets[stream.priority.urgency()];
+        if (stream.priority.incremental()) {
+            bucket.addLast(stream);
+        } else {
+            bucket.addFirst(stream);
+        }
+    }
+
+    private void writeTo(Frame frame) throws IOException {
+        try {
+            frame.writeTo(outputStream);
+        } catch (IOException e) {
+            fail(e);
+        }
+        stats.framesSent.incrementAndGet();
+    }
+
+    private void fail(IOException e) throws IOException {
+        failure = e;
+        queue.clear();
+        for (var bucket : buckets) {
+            bucket.clear();
+        }
+        queuedDataBytes.set(0);
+        throw e;
+    }
+
+    /** a DATA frame whose payload was copied since the writer lock was held by another thread */
+    private static final class QueuedData implements Frame {
+        private final int streamId;
+        private final FlagSet flags;
+        private final byte[] data;
+
+        QueuedData(int streamId, FlagSet flags, byte[] data) {
+            this.streamId = streamId;
+            this.flags = flags;
+            this.data = data;
+        }
+
+        @Override
+        public void writeTo(OutputStream os) throws IOException {
+            FrameHeader.writeTo(os, data.length, FrameType.DATA, flags, streamId);
+            os.write(data);
+        }
+    }
+}
@@ -7,22 +7,27 @@ import java.io.OutputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
 import com.sun.net.httpserver.Headers;
 
+import robaho.net.httpserver.HeaderBudget;
 import robaho.net.httpserver.HttpConnection;
 import robaho.net.httpserver.OpenAddressIntMap;
 import robaho.net.httpserver.OptimizedHeaders;
 import robaho.net.httpserver.ServerConfig;
 import robaho.net.httpserver.http2.hpack.HPackContext;
+import robaho.net.httpserver.http2.hpack.HPackEncoder;
 import robaho.net.httpserver.http2.hpack.HTTP2HeaderField;
 import robaho.net.httpserver.http2.hpack.HeaderFields;
 import robaho.net.httpserver.http2.frame.BaseFrame;
@@ -31,11 +36,12 @@ import robaho.net.httpserver.http2.frame.DataFrame;
 import robaho.net.httpserver.http2.frame.FrameFlag;
 import robaho.net.httpserver.http2.frame.FrameFlag.FlagSet;
 import robaho.net.httpserver.http2.frame.FrameHeader;
-import robaho.net.httpserver.http2.frame.FrameSerializer;
+import robaho.net.httpserver.http2.frame.FrameReader;
 import robaho.net.httpserver.http2.frame.FrameType;
 import robaho.net.httpserver.http2.frame.GoawayFrame;
 import robaho.net.httpserver.http2.frame.HeadersFrame;
 import robaho.net.httpserver.http2.frame.PingFrame;
+import robaho.net.httpserver.http2.frame.PriorityUpdateFrame;
 import robaho.net.httpserver.http2.frame.ResetStreamFrame;
 import robaho.net.httpserver.http2.frame.SettingIdentifier;
 import robaho.net.httpserver.http2.frame.SettingParameter;
@@ -49,11 +55,20 @@ public class HTTP2Connection {
     static final String PARTIAL_PREFACE = "\r\nSM\r\n\r\n";
 
     final private InputStream inputStream;
-    final OutputStream outputStream;
+    final private FrameReader reader;
+    final ConnectionWriter writer;
 
     private int lastSeenStreamId = 0;
+    // set by a graceful GOAWAY, streams opened after it are refused. guarded by goAwayLock along with lastSeenStreamId updates
+    private volatile boolean goingAway;
+    private final Object goAwayLock = new Object();
+    // when the last stream was opened or closed, to measure how long the connection has had no streams
+    private volatile long lastStreamNanos = System.nanoTime();
+    // the payload of the outstanding keepalive PING, null if none
+    private volatile byte[] keepalivePing;
+    private volatile long keepalivePingNanos;
 
-    final OpenAddressIntMap<HTTP2Stream> http2Streams = new OpenAddressIntMap(16);
+    final OpenAddressIntMap<HTTP2Stream> http2Streams = new OpenAddressIntMap<>(16);
 
     private final SettingsMap remoteSettings = new SettingsMap();
     private final SettingsMap localSettings = new SettingsMap();
@@ -63,20 +78,30 @@ public class HTTP2Connection {
     final HttpConnection httpConnection;
 
     final Logger logger;
-    final HPackContext hpack = new HPackContext();
+    final HPackContext hpack = new HPackContext(ServerConfig.http2HeaderTableSize());
+    final HPackEncoder hpackEncoder;
 
     final AtomicLong sendWindow = new AtomicLong(65535);
+    // writers waiting for the connection send window, in arrival order
+    private final ConcurrentLinkedQueue<Thread> sendWindowWaiters = new ConcurrentLinkedQueue<>();
     final AtomicInteger receiveWindow = new AtomicInteger(65535);
     final AtomicInteger requestsInProgress = new AtomicInteger();
 
+    // server initiated streams use even ids
+    private final AtomicInteger nextPushStreamId = new AtomicInteger(2);
+    final AtomicInteger activePushes = new AtomicInteger();
+
     final HTTP2Stats stats;
 
-    private final int connectionWindowSize;
+    final WindowTuner windowTuner;
+
+    // bounds the work a client can cause without ever reading a response, used by the reader thread only
+    private final RateLimit resetLimit;
+    private final RateLimit controlFrameLimit;
 
     private int maxConcurrentStreams = -1;
     private int highNumberStreams = 0;
 
-    private final Lock lock = new ReentrantLock();
     private final AtomicBoolean closed = new AtomicBoolean(false);
 
     /**
@@ -88,15 +113,25 @@ public class HTTP2Connection {
     public HTTP2Connection(HttpConnection httpConnection, HTTP2Stats stats, InputStream input, OutputStream output, StreamHandler handler) {
         this.httpConnection = httpConnection;
         this.inputStream = input;
-        this.outputStream = output;
+        this.writer = new ConnectionWriter(output, stats, handler.getExecutor());
         this.handler = handler;
         this.stats = stats;
+        this.hpackEncoder = new HPackEncoder(stats, !ServerConfig.http2DisableHuffmanEncoding());
         this.logger = System.getLogger("robaho.net.httpserver.http2");
 
-        connectionWindowSize = ServerConfig.http2ConnectionWindowSize();
+        this.windowTuner = new WindowTuner(ServerConfig.http2ConnectionWindowSize(), ServerConfig.http2InitialWindowSize(), ServerConfig.http2MaxReceiveWindowSize());
+        // enough DATA buffers to hold a full connection receive window
+        this.reader = new FrameReader(input, ServerConfig.http2MaxFrameSize(), Math.min(64, ServerConfig.http2ConnectionWindowSize() / ServerConfig.http2MaxFrameSize() + 1));
+        long floodWindowNanos = TimeUnit.MILLISECONDS.toNanos(ServerConfig.http2FloodWindowMillis());
+        this.resetLimit = new RateLimit(ServerConfig.http2MaxResetStreams(), floodWindowNanos, System.nanoTime());
+        this.controlFrameLimit = new RateLimit(ServerConfig.http2MaxControlFrames(), floodWindowNanos, System.nanoTime());
 
         localSettings.set(new SettingParameter(SettingIdentifier.SETTINGS_MAX_FRAME_SIZE, ServerConfig.http2MaxFrameSize()));
         localSettings.set(new SettingParameter(SettingIdentifier.SETTINGS_INITIAL_WINDOW_SIZE, ServerConfig.http2InitialWindowSize()));
+        localSettings.set(new SettingParameter(SettingIdentifier.SETTINGS_MAX_HEADER_LIST_SIZE, ServerConfig.getMaxReqHeaderSize()));
+        if (ServerConfig.http2HeaderTableSize() != HPackContext.DEFAULT_TABLE_SIZE) {
+            localSettings.set(new SettingParameter(SettingIdentifier.SETTINGS_HEADER_TABLE_SIZE, ServerConfig.http2HeaderTableSize()));
+        }
 
         if (ServerConfig.http2MaxConcurrentStreams() != -1) {
             localSettings.set(new SettingParameter(SettingIdentifier.SETTINGS_MAX_CONCURRENT_STREAMS, ServerConfig.http2MaxConcurrentStreams()));
@@ -111,14 +146,6 @@ public class HTTP2Connection {
         }
     }
 
-    void lock() {
-        lock.lock();
-    }
-
-    void unlock() {
-        lock.unlock();
-    }
-
     @Override
     public String toString() {
         return "{" + httpConnection + ", streams=" + http2Streams.size() + ", high " + highNumberStreams + "}";
@@ -129,6 +156,96 @@ public class HTTP2Connection {
             for (HTTP2Stream stream : http2Streams.values()) {
                 stream.close();
             }
+            Thread waiter;
+            while ((waiter = sendWindowWaiters.poll()) != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * reserve up to len bytes of the connection send window
+     * @return the number of bytes reserved, or 0 if the window is exhausted
+     */
+    int acquireSendWindow(int len) {
+        while (true) {
+            long available = sendWindow.get();
+            if (available <= 0) {
+                return 0;
+            }
+            int acquired = (int) Math.min(len, available);
+            if (sendWindow.compareAndSet(available, available - acquired)) {
+                return acquired;
+            }
+        }
+    }
+
+    /**
+     * reserve exactly len bytes of the connection send window
+     * @return false if the window is smaller than len, in which case nothing is reserved
+     */
+    boolean tryAcquireSendWindow(int len) {
+        while (true) {
+            long available = sendWindow.get();
+            if (available < len) {
+                return false;
+            }
+            if (sendWindow.compareAndSet(available, available - len)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * wait until the connection send window is available. Waiters are woken in arrival order as WINDOW_UPDATE
+     * frames are received.
+     */
+    void awaitSendWindow() {
+        Thread current = Thread.currentThread();
+        sendWindowWaiters.add(current);
+        // re-check after registering, since the update may have been processed before the waiter was visible
+        if (sendWindow.get() <= 0 && !isClosed()) {
+            LockSupport.park(this);
+        }
+        // a waiter that was not woken by an update must not receive a later wakeup
+        sendWindowWaiters.remove(current);
+    }
+
+    /**
+     * wake the waiters that the connection send window can satisfy, assuming each sends a full frame
+     */
+    private void sendWindowUpdated() {
+        var setting = remoteSettings.get(SettingIdentifier.SETTINGS_MAX_FRAME_SIZE);
+        int frameSize = setting != null ? (int) setting.value : 16384;
+        long available = sendWindow.get();
+        Thread waiter;
+        while (available > 0 && (waiter = sendWindowWaiters.poll()) != null) {
+            LockSupport.unpark(waiter);
+            available -= frameSize;
+        }
+    }
+
+    /**
+     * reserve a pushed stream, respecting the peer's SETTINGS_ENABLE_PUSH and SETTINGS_MAX_CONCURRENT_STREAMS
+     * @return the promised stream id, or -1 if the peer does not accept another pushed stream
+     */
+    int reservePush() {
+        if (isClosed() || goingAway) {
+            return -1;
+        }
+        var enablePush = remoteSettings.get(SettingIdentifier.SETTINGS_ENABLE_PUSH);
+        if (enablePush != null && enablePush.value == 0) {
+            return -1;
+        }
+        var maxStreams = remoteSettings.get(SettingIdentifier.SETTINGS_MAX_CONCURRENT_STREAMS);
+        while (true) {
+            int active = activePushes.get();
+            if (maxStreams != null && active >= maxStreams.value) {
+                return -1;
+            }
+            if (activePushes.compareAndSet(active, active + 1)) {
+                return nextPushStreamId.getAndAdd(2);
+            }
         }
     }
 
@@ -145,23 +262,16 @@ public class HTTP2Connection {
     }
 
     /**
-     * writes a frame that consists of multiple byte arrays. the method is
-     * designed for low-volume frames where the overhead of creating a new byte
-     * array is minimal. Otherwise, the data/frame should be written directly to
-     * the output stream, e.g. see HTTP2Stream.Http2OutputStream
+     * writes a frame that consists of multiple byte arrays, and flushes the connection. the method is
+     * designed for low-volume control frames. DATA frames are written by HTTP2Stream.Http2OutputStream
      */
     public void writeFrame(List<byte[]> partials) throws IOException {
-        lock();
-        try {
-            logger.log(Level.TRACE, () -> "sending frame " + FrameHeader.debug(partials.get(0)));
+        logger.log(Level.TRACE, () -> "sending frame " + FrameHeader.debug(partials.get(0)));
+        writer.write(os -> {
             for (var frame : partials) {
-                outputStream.write(frame);
+                os.write(frame);
             }
-            outputStream.flush();
-            stats.flushes.incrementAndGet();
-        } finally {
-            unlock();
-        }
+        }, true);
     }
 
     /**
@@ -198,15 +308,17 @@ public class HTTP2Connection {
         int openStreamId = 0;
 
         List<byte[]> headerBlockFragments = new ArrayList();
+        int headerBlockSize = 0;
 
         // main HTTP2
         while (!httpConnection.isClosed()) {
-            BaseFrame frame = FrameSerializer.deserialize(inputStream);
+            BaseFrame frame = reader.read();
             // System.out.println("Received frame: " + frame.getHeader());
 
             int streamId = frame.getHeader().getStreamIdentifier();
             if (streamId != 0 && streamId % 2 == 0) {
-                throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "invalid stream id " + streamId + " on type " + frame.getHeader().getType());
+                processPushedStreamFrame(frame, inHeaders);
+                continue;
             }
 
             // rfc7540 (section 6.5): SETTINGS frames always apply to a
@@ -220,6 +332,7 @@ public class HTTP2Connection {
                         }
                         continue;
                     } else {
+                        checkControlFrame();
                         updateRemoteSettings((SettingsFrame) frame);
                         sendSettingsAck();
                     }
@@ -232,7 +345,19 @@ public class HTTP2Connection {
                     throw new IOException("received GOAWAY from remote " + goaway.errorCode);
                 case PING:
                     if (!frame.getHeader().getFlags().contains(FrameFlag.ACK)) {
+                        checkControlFrame();
                         sendPingAck((PingFrame) frame);
+                    } else if (Arrays.equals(((PingFrame) frame).body, WindowTuner.PING_PAYLOAD)) {
+                        if (windowTuner.pingAcknowledged(System.nanoTime())) {
+                            logger.log(Level.DEBUG, () -> "receive windows grown to " + windowTuner.connectionWindow() + ", round trip " + windowTuner.rttMillis() + " ms");
+                            sendWindowUpdate();
+                        }
+                    } else if (Arrays.equals(((PingFrame) frame).body, keepalivePing)) {
+                        long rtt = System.nanoTime() - keepalivePingNanos;
+                        keepalivePing = null;
+                        stats.pingAcks.incrementAndGet();
+                        stats.pingRttNanos.addAndGet(rtt);
+                        logger.log(Level.TRACE, () -> "keepalive ping round trip " + TimeUnit.NANOSECONDS.toMillis(rtt) + " ms");
                     }
                     continue;
                 case WINDOW_UPDATE:
@@ -243,6 +368,7 @@ public class HTTP2Connection {
                         if (sendWindow.get() > 2147483647) {
                             throw new HTTP2Exception(HTTP2ErrorCode.FLOW_CONTROL_ERROR, "maximum window size exceeded");
                         }
+                        sendWindowUpdated();
                         continue;
                     }
                     break;
@@ -250,18 +376,25 @@ public class HTTP2Connection {
                     if (inHeaders) {
                         throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "NOT_IMPLEMENTED frame received while headers being received");
                     }
+                    checkControlFrame();
                     if (frame.getHeader().getStreamIdentifier() == 0) {
                         continue;
                     }
                     break;
                 case DATA:
-                    DataFrame dataFrame = (DataFrame) frame;
-                    if (receiveWindow.addAndGet(-dataFrame.body.length) < connectionWindowSize/10) {
+                    // flow control includes the padding
+                    if (receiveWindow.addAndGet(-frame.getHeader().getLength()) < windowTuner.connectionWindow()/10) {
                         sendWindowUpdate();
                     }
+                    if (windowTuner.dataReceived(frame.getHeader().getLength(), System.nanoTime())) {
+                        writeFrame(new PingFrame(WindowTuner.PING_PAYLOAD).encode());
+                    }
                     if (inHeaders) {
                         throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "DATA frame received while headers being received");
                     }
+                    if (frame.getHeader().getLength() == 0 && !frame.getHeader().getFlags().contains(FrameFlag.END_STREAM)) {
+                        checkControlFrame();
+                    }
                     break;
                 case HEADERS:
                     if (inHeaders) {
@@ -280,6 +413,7 @@ public class HTTP2Connection {
                     }
                     HeadersFrame headersFrame = (HeadersFrame) frame;
                     headerBlockFragments.add(headersFrame.getHeaderBlock());
+                    headerBlockSize = checkHeaderBlock(headerBlockSize, headersFrame.getHeaderBlock(), headersFrame.getHeader().getFlags());
                     if (!headersFrame.getHeader().getFlags().contains(FrameFlag.END_HEADERS)) {
                         inHeaders = true;
                         openStreamId = streamId;
@@ -295,6 +429,7 @@ public class HTTP2Connection {
                     }
                     ContinuationFrame continuationFrame = (ContinuationFrame) frame;
                     headerBlockFragments.add(continuationFrame.getHeaderBlock());
+                    headerBlockSize = checkHeaderBlock(headerBlockSize, continuationFrame.getHeaderBlock(), continuationFrame.getHeader().getFlags());
                     if (!continuationFrame.getHeader().getFlags().contains(FrameFlag.END_HEADERS)) {
                         continue;
                     }
@@ -306,16 +441,30 @@ public class HTTP2Connection {
                     if (streamId == 0) {
                         throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "PRIORITY frame received on stream 0");
                     }
-                    // stream priority is ignore for now
+                    checkControlFrame();
+                    // RFC 7540 priorities are deprecated by RFC 9218 and ignored
+                    continue;
+                case PRIORITY_UPDATE:
+                    if (inHeaders) {
+                        throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "PRIORITY_UPDATE frame received during headers receive");
+                    }
+                    checkControlFrame();
+                    PriorityUpdateFrame priorityUpdate = (PriorityUpdateFrame) frame;
+                    // updates for streams that are not open are ignored, RFC 9218 section 7.1 allows but does not require buffering them
+                    var prioritized = http2Streams.get(priorityUpdate.prioritizedStreamId);
+                    if (prioritized != null) {
+                        prioritized.updatePriority(priorityUpdate.priorityFieldValue);
+                    }
                     continue;
                 case RST_STREAM:
+                    if (streamId == 0) {
+                        throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "RST_STREAM frame received on stream 0");
+                    }
                     ResetStreamFrame resetFrame = (ResetStreamFrame) frame;
+                    checkReset(http2Streams.get(streamId), resetFrame.errorCode);
                     if (resetFrame.errorCode == HTTP2ErrorCode.NO_ERROR) {
                         continue;
                     }
-                    if (streamId == 0) {
-                        throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "RST_STREAM frame received on stream 0");
-                    }
                     if (http2Streams.get(streamId) == null) {
                         if (streamId <= lastSeenStreamId) {
                             continue;
@@ -337,8 +486,29 @@ public class HTTP2Connection {
                 }
                 highNumberStreams = Math.max(highNumberStreams, currentSize);
                 byte[] headerBlock = Utils.combineByteArrays(headerBlockFragments);
+                headerBlockFragments.clear();
+                headerBlockSize = 0;
+                inHeaders = false;
+                boolean refused;
+                synchronized (goAwayLock) {
+                    lastSeenStreamId = streamId;
+                    refused = goingAway;
+                }
+                HeaderBudget budget = new HeaderBudget();
+                List<HTTP2HeaderField> decoded = hpack.decodeFieldSegments(headerBlock, budget);
+                if (budget.exceeded()) {
+                    stats.headerListOverflows.incrementAndGet();
+                    logger.log(Level.DEBUG, () -> "request headers exceed the maximum count or size, resetting stream " + streamId);
+                    sendResetStream(HTTP2ErrorCode.PROTOCOL_ERROR, streamId);
+                    continue;
+                }
+                if (refused) {
+                    // the stream was not included in the GOAWAY, so the client can retry it on a new connection
+                    sendResetStream(HTTP2ErrorCode.REFUSED_STREAM, streamId);
+                    continue;
+                }
                 HeaderFields fields = new HeaderFields();
-                fields.addAll(hpack.decodeFieldSegments(headerBlock));
+                fields.addAll(decoded);
                 // streamID is not present and has to be greater than all
                 // the stream IDs present
                 fields.validate();
@@ -350,16 +520,21 @@ public class HTTP2Connection {
                         requestHeaders.add(field.normalizedName, field.value);
                     }
                 }
-                headerBlockFragments.clear();
-                inHeaders = false;
                 targetStream = new HTTP2Stream(streamId, this, requestHeaders, handler);
                 http2Streams.put(streamId, targetStream);
-                lastSeenStreamId = streamId;
+                lastStreamNanos = System.nanoTime();
             } else {
                 if (streamId <= lastSeenStreamId) {
                     if(frame.getHeader().getType()==FrameType.WINDOW_UPDATE) {
                         // must accept window update even if stream is closed
                         logger.log(Level.TRACE,() -> "received WINDOW_UPDATE on closed stream "+streamId);
+                        checkControlFrame();
+                        continue;
+                    }
+                    if(frame instanceof DataFrame data) {
+                        // the request body of a stream reset by the server, the connection window has been updated
+                        logger.log(Level.TRACE,() -> "received DATA on closed stream "+streamId);
+                        data.release();
                         continue;
                     }
                     throw new HTTP2Exception(HTTP2ErrorCode.STREAM_CLOSED, "frame "+frame.getHeader().getType()+ ", length "+ frame.getHeader().getLength()+", stream " + streamId + " is closed");
@@ -371,6 +546,70 @@ public class HTTP2Connection {
         }
     }
 
+    /**
+     * count a RST_STREAM from the peer. The reset of a stream whose handler is still running is counted against the
+     * reset limit, since it discards work the server started, CVE-2023-44487. The cancel of a completed stream and a
+     * NO_ERROR reset only count as control frames.
+     * @param stream the open stream, or null if it is closed
+     */
+    private void checkReset(HTTP2Stream stream, HTTP2ErrorCode errorCode) throws HTTP2Exception {
+        if (stream == null || errorCode == HTTP2ErrorCode.NO_ERROR) {
+            checkControlFrame();
+            return;
+        }
+        if (!resetLimit.acquire(System.nanoTime())) {
+            stats.resetFloods.incrementAndGet();
+            throw new HTTP2Exception(HTTP2ErrorCode.ENHANCE_YOUR_CALM, "too many reset streams");
+        }
+    }
+
+    /**
+     * count a frame that requires work or a response from the server but carries no request
+     */
+    private void checkControlFrame() throws HTTP2Exception {
+        if (!controlFrameLimit.acquire(System.nanoTime())) {
+            stats.controlFrameFloods.incrementAndGet();
+            throw new HTTP2Exception(HTTP2ErrorCode.ENHANCE_YOUR_CALM, "too many control frames");
+        }
+    }
+
+    /**
+     * @return the size of the header block including the fragment
+     */
+    private int checkHeaderBlock(int size, byte[] fragment, FlagSet flags) throws HTTP2Exception {
+        size += fragment.length;
+        if (size > ServerConfig.http2MaxHeaderBlockSize()) {
+            stats.headerBlockOverflows.incrementAndGet();
+            throw new HTTP2Exception(HTTP2ErrorCode.ENHANCE_YOUR_CALM, "header block exceeds " + ServerConfig.http2MaxHeaderBlockSize() + " bytes");
+        }
+        // empty fragments do not grow the block, CVE-2024-27316
+        if (fragment.length == 0 && !flags.contains(FrameFlag.END_HEADERS)) {
+            checkControlFrame();
+        }
+        return size;
+    }
+
+    /**
+     * the peer may only send RST_STREAM, WINDOW_UPDATE or PRIORITY frames on a pushed stream
+     */
+    private void processPushedStreamFrame(BaseFrame frame, boolean inHeaders) throws Exception {
+        int streamId = frame.getHeader().getStreamIdentifier();
+        FrameType type = frame.getHeader().getType();
+        if (inHeaders || streamId >= nextPushStreamId.get() || (type != FrameType.RST_STREAM && type != FrameType.WINDOW_UPDATE && type != FrameType.PRIORITY)) {
+            throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "invalid stream id " + streamId + " on type " + type);
+        }
+        var stream = http2Streams.get(streamId);
+        if (type == FrameType.RST_STREAM) {
+            checkReset(stream, ((ResetStreamFrame) frame).errorCode);
+        } else if (type == FrameType.PRIORITY || stream == null) {
+            checkControlFrame();
+        }
+        // frames for closed pushed streams and priority signals are ignored
+        if (stream != null && type != FrameType.PRIORITY) {
+            stream.processFrame(frame);
+        }
+    }
+
     public void updateRemoteSettings(SettingsFrame remoteSettingFrame) throws HTTP2Exception {
         logger.log(Level.TRACE, () -> "updating remote settings");
 
@@ -383,8 +622,13 @@ public class HTTP2Connection {
                 logger.log(Level.DEBUG, () -> "received initial window size of " + parameter.value);
                 for (var stream : http2Streams.values()) {
                     stream.sendWindow.addAndGet(parameter.value - oldInitialWindowSize);
+                    stream.sendWindowUpdated();
                 }
             }
+            if (parameter.identifier == SettingIdentifier.SETTINGS_HEADER_TABLE_SIZE) {
+                logger.log(Level.DEBUG, () -> "received header table size " + parameter.value);
+                hpackEncoder.setMaxTableSize(parameter.value);
+            }
             if (parameter.identifier == SettingIdentifier.SETTINGS_MAX_FRAME_SIZE) {
                 logger.log(Level.DEBUG, () -> "received max frame size " + parameter.value);
             }
@@ -415,7 +659,7 @@ public class HTTP2Connection {
     public void sendWindowUpdate() throws IOException {
         int current = receiveWindow.get();
         try {
-            int increment = connectionWindowSize-current;
+            int increment = windowTuner.connectionWindow()-current;
             receiveWindow.addAndGet(increment);
             WindowUpdateFrame frame = new WindowUpdateFrame(0, increment);
             HTTP2Connection.this.writeFrame(frame.encode());
@@ -433,14 +677,8 @@ public class HTTP2Connection {
     }
 
     public void sendGoAway(HTTP2ErrorCode errorCode) throws IOException {
-        lock();
-        try {
-            GoawayFrame frame = new GoawayFrame(errorCode, lastSeenStreamId);
-            frame.writeTo(outputStream);
-            outputStream.flush();
-        } finally {
-            unlock();
-        }
+        GoawayFrame frame = new GoawayFrame(errorCode, lastSeenStreamId);
+        writer.writeAndWait(frame::writeTo);
         logger.log(Level.TRACE, () -> "Sent GoAway " + errorCode + ", last stream " + lastSeenStreamId);
     }
 
@@ -450,13 +688,67 @@ public class HTTP2Connection {
         logger.log(Level.TRACE, () -> "Sent ResetStream " + errorCode);
     }
 
+    /**
+     * send a keepalive PING, the round trip time is recorded when it is acknowledged
+     */
     public void sendPing() throws IOException {
-        PingFrame frame = new PingFrame();
+        long now = System.nanoTime();
+        byte[] payload = ByteBuffer.allocate(8).putLong(now).array();
+        keepalivePingNanos = now;
+        keepalivePing = payload;
+        PingFrame frame = new PingFrame(payload);
         HTTP2Connection.this.writeFrame(frame.encode());
         stats.pingsSent.incrementAndGet();
         logger.log(Level.TRACE, () -> "Sent Ping ");
     }
 
+    /** @return true if a keepalive PING has been sent and not acknowledged */
+    public boolean isPingOutstanding() {
+        return keepalivePing != null;
+    }
+
+    /**
+     * send a graceful GOAWAY, streams opened after it are refused. The connection should be closed once the
+     * active streams complete.
+     * @return false if a GOAWAY was already sent
+     */
+    public boolean goAway() throws IOException {
+        int lastStreamId;
+        synchronized (goAwayLock) {
+            if (goingAway) {
+                return false;
+            }
+            goingAway = true;
+            lastStreamId = lastSeenStreamId;
+        }
+        GoawayFrame frame = new GoawayFrame(HTTP2ErrorCode.NO_ERROR, lastStreamId);
+        writer.write(frame::writeTo, true);
+        logger.log(Level.DEBUG, () -> "Sent graceful GoAway, last stream " + lastStreamId);
+        return true;
+    }
+
+    public boolean isGoingAway() {
+        return goingAway;
+    }
+
+    /** @return the number of open streams, including pushed streams */
+    public int activeStreams() {
+        return http2Streams.size();
+    }
+
+    /** @return the time in milliseconds the connection has had no open streams, or 0 if a stream is open */
+    public long idleMillis() {
+        if (http2Streams.size() > 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastStreamNanos);
+    }
+
+    /** called when a stream is removed */
+    void streamClosed() {
+        lastStreamNanos = System.nanoTime();
+    }
+
     private void sendPingAck(PingFrame ping) throws IOException {
         PingFrame frame = new PingFrame(ping);
         HTTP2Connection.this.writeFrame(frame.encode());
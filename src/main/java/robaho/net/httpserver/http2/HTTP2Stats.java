@@ -11,7 +11,36 @@ public class HTTP2Stats {
     public final AtomicLong nonsslConnections = new AtomicLong();
     public final AtomicLong totalStreams = new AtomicLong();
     public final AtomicLong pauses = new AtomicLong();
+    /** completed responses and the HEADERS and DATA frames they were sent in */
+    public final AtomicLong responses = new AtomicLong();
+    public final AtomicLong responseFrames = new AtomicLong();
+    /** responses sent as a HEADERS frame and a single DATA frame carrying END_STREAM */
+    public final AtomicLong singleFrameResponses = new AtomicLong();
     public final AtomicLong pingsSent = new AtomicLong();
+    /** keepalive PING acknowledgements and their total round trip time */
+    public final AtomicLong pingAcks = new AtomicLong();
+    public final AtomicLong pingRttNanos = new AtomicLong();
+    public final AtomicLong pingTimeouts = new AtomicLong();
+    /** graceful GOAWAYs sent by the keepalive policies */
+    public final AtomicLong idleGoAways = new AtomicLong();
+    public final AtomicLong ageGoAways = new AtomicLong();
+    public final AtomicLong pushes = new AtomicLong();
+    /** connections closed with ENHANCE_YOUR_CALM, by the limit that was exceeded */
+    public final AtomicLong resetFloods = new AtomicLong();
+    public final AtomicLong controlFrameFloods = new AtomicLong();
+    public final AtomicLong headerBlockOverflows = new AtomicLong();
+    /** streams reset because the request headers exceed the count or size limit */
+    public final AtomicLong headerListOverflows = new AtomicLong();
+    public final AtomicLong headerBytesRaw = new AtomicLong();
+    public final AtomicLong headerBytesEncoded = new AtomicLong();
+    /** DATA frame payload bytes by RFC 9218 urgency */
+    public final AtomicLong[] dataBytesSent = new AtomicLong[Priority.LEVELS];
+
+    public HTTP2Stats() {
+        for (int i = 0; i < dataBytesSent.length; i++) {
+            dataBytesSent[i] = new AtomicLong();
+        }
+    }
 
     private volatile long lastStatsTime = System.currentTimeMillis();
 
@@ -22,6 +51,16 @@ public class HTTP2Stats {
 
         long _bytes = bytesSent.getAndSet(0);
         long _frames = framesSent.getAndSet(0);
+        long _headerBytesRaw = headerBytesRaw.getAndSet(0);
+        long _headerBytesEncoded = headerBytesEncoded.getAndSet(0);
+        long _responses = responses.getAndSet(0);
+        long _responseFrames = responseFrames.getAndSet(0);
+        long _pingAcks = pingAcks.getAndSet(0);
+        long _pingRttNanos = pingRttNanos.getAndSet(0);
+        StringBuilder _dataBytes = new StringBuilder();
+        for (int i = 0; i < dataBytesSent.length; i++) {
+            _dataBytes.append(i == 0 ? "" : ", ").append("u").append(i).append("=").append(dataBytesSent[i].getAndSet(0));
+        }
 
         return
                 "Http2 SSL Connections Since: "+sslConnections.getAndSet(0)+"\n" +
@@ -33,7 +72,20 @@ public class HTTP2Stats {
                 "Http2 Avg Frame Size: "+(long)(_frames==0 ? 0 : _bytes/_frames)+"\n"+
                 "Http2 Flushes/sec: "+(long)(flushes.getAndSet(0)/(secs))+"\n"+
                 "Http2 Pauses/sec: "+(long)(pauses.getAndSet(0)/(secs))+"\n"+
-                "Http2 Pings Sent Since: "+pingsSent.getAndSet(0)+"\n";
+                "Http2 Avg Frames Per Response: "+String.format("%.2f",_responses==0 ? 0.0 : (double)_responseFrames/_responses)+"\n"+
+                "Http2 Single Frame Responses Since: "+singleFrameResponses.getAndSet(0)+"\n"+
+                "Http2 Pings Sent Since: "+pingsSent.getAndSet(0)+"\n"+
+                "Http2 Avg Ping RTT ms: "+String.format("%.2f",_pingAcks==0 ? 0.0 : _pingRttNanos/1e6/_pingAcks)+"\n"+
+                "Http2 Ping Timeouts Since: "+pingTimeouts.getAndSet(0)+"\n"+
+                "Http2 Idle GoAways Since: "+idleGoAways.getAndSet(0)+"\n"+
+                "Http2 Max Age GoAways Since: "+ageGoAways.getAndSet(0)+"\n"+
+                "Http2 Pushes Since: "+pushes.getAndSet(0)+"\n"+
+                "Http2 Reset Floods Since: "+resetFloods.getAndSet(0)+"\n"+
+                "Http2 Control Frame Floods Since: "+controlFrameFloods.getAndSet(0)+"\n"+
+                "Http2 Header Block Overflows Since: "+headerBlockOverflows.getAndSet(0)+"\n"+
+                "Http2 Header List Overflows Since: "+headerListOverflows.getAndSet(0)+"\n"+
+                "Http2 Header Compression Ratio: "+String.format("%.2f",_headerBytesEncoded==0 ? 0.0 : (double)_headerBytesRaw/_headerBytesEncoded)+"\n"+
+                "Http2 Data Bytes By Urgency Since: "+_dataBytes+"\n";
 
     }
 }
@@ -7,8 +7,7 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.InetSocketAddress;
 import java.util.Arrays;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
@@ -19,7 +18,7 @@ import com.sun.net.httpserver.Headers;
 
 import robaho.net.httpserver.NoSyncBufferedOutputStream;
 import robaho.net.httpserver.OptimizedHeaders;
-import robaho.net.httpserver.http2.hpack.HPackContext;
+import robaho.net.httpserver.ServerConfig;
 import robaho.net.httpserver.http2.frame.BaseFrame;
 import robaho.net.httpserver.http2.frame.DataFrame;
 import robaho.net.httpserver.http2.frame.FrameFlag;
@@ -37,18 +36,21 @@ public class HTTP2Stream {
     // needs to be accessible for connection to adjust based on SettingsFrame
     final AtomicLong sendWindow = new AtomicLong(65535);
     private final AtomicLong receiveWindow = new AtomicLong(65535);
-    private final int initialWindowSize;
 
     private final HTTP2Connection connection;
     private final Logger logger;
-    private final OutputStream outputStream;
+    private final ResponseBody outputStream;
+    private final Http2OutputStream http2OutputStream;
     private final DataIn dataIn;
     private final HTTP2Connection.StreamHandler handler;
     private final Headers requestHeaders;
     private final Headers responseHeaders = new OptimizedHeaders(16);
     private final AtomicBoolean headersSent = new AtomicBoolean(false);
+    private final ConnectionWriter.StreamQueue dataQueue;
 
     private volatile Thread thread;
+    // the writer waiting for the stream send window
+    private volatile Thread windowWaiter;
     private volatile boolean streamOpen = true;
     // halfClosed is set when a END_STREAM is received. The streams are bidirectional.
     private volatile boolean halfClosed = false;
@@ -57,6 +59,8 @@ public class HTTP2Stream {
     private volatile AtomicBoolean handlingRequest = new AtomicBoolean(false);
 
     private long dataInSize = 0;
+    // the HEADERS and DATA frames of the response, for the frames per response statistic
+    private int responseFrames = 0;
 
     public HTTP2Stream(int streamId, HTTP2Connection connection, Headers requestHeaders, HTTP2Connection.StreamHandler handler) throws IOException {
         this.streamId = streamId;
@@ -65,7 +69,9 @@ public class HTTP2Stream {
         this.requestHeaders = requestHeaders;
         this.handler = handler;
         this.dataIn = new DataIn();
-        this.outputStream = new NoSyncBufferedOutputStream(new Http2OutputStream(streamId));
+        this.dataQueue = new ConnectionWriter.StreamQueue(Priority.parse(requestHeaders.getFirst("Priority"), Priority.DEFAULT));
+        this.http2OutputStream = new Http2OutputStream(streamId);
+        this.outputStream = new ResponseBody();
         var setting = connection.getRemoteSettings().get(SettingIdentifier.SETTINGS_INITIAL_WINDOW_SIZE);
         if(setting!=null) {
             sendWindow.set((int)(setting.value));
@@ -73,9 +79,6 @@ public class HTTP2Stream {
         setting = connection.getLocalSettings().get(SettingIdentifier.SETTINGS_INITIAL_WINDOW_SIZE);
         if(setting!=null) {
             receiveWindow.set((int)(setting.value));
-            initialWindowSize = (int)setting.value;
-        } else {
-            initialWindowSize = 65535;
         }
         if(logger.isLoggable(Level.TRACE)) {
             logger.log(Level.TRACE,() -> "new stream, send window size "+sendWindow.get()+", receive window size "+receiveWindow.get()+" on stream "+streamId);
@@ -113,6 +116,19 @@ public class HTTP2Stream {
         return halfClosed;
     }
 
+    public Priority getPriority() {
+        return dataQueue.priority;
+    }
+
+    /**
+     * update the priority parameters present in the field value, from a PRIORITY_UPDATE frame or the response
+     * priority header
+     */
+    void updatePriority(String fieldValue) {
+        dataQueue.priority = Priority.parse(fieldValue, dataQueue.priority);
+        logger.log(Level.TRACE, () -> "priority " + dataQueue.priority + " on stream " + streamId);
+    }
+
     public SSLSession getSSLSession() {
         return connection.httpConnection.getSSLSession();
     }
@@ -124,20 +140,42 @@ public class HTTP2Stream {
         return -1;
     }
 
+    private void awaitSendWindow() {
+        windowWaiter = Thread.currentThread();
+        try {
+            // re-check after registering, since the update may have been processed before the waiter was visible
+            while(sendWindow.get()<=0 && streamOpen && !connection.isClosed() && !Thread.currentThread().isInterrupted()) {
+                LockSupport.park(this);
+            }
+        } finally {
+            windowWaiter = null;
+        }
+    }
+
+    /** called when the stream send window is increased */
+    void sendWindowUpdated() {
+        LockSupport.unpark(windowWaiter);
+    }
+
     public void close() {
         streamOpen = false;
 
-        if(connection.http2Streams.put(streamId,null)==null) {
+        if(connection.http2Streams.remove(streamId)==null) {
             return;
         }
+        connection.streamClosed();
+        if(streamId % 2 == 0) {
+            connection.activePushes.decrementAndGet();
+        }
 
         logger.log(Level.TRACE,() -> "closing stream "+streamId);
 
         try {
-            dataIn.close();
+            dataIn.finish();
             outputStream.close();
             if(thread!=null)
                 thread.interrupt();
+            sendWindowUpdated();
         } catch (IOException e) {
             if(!connection.isClosed()) {
                 connection.close();
@@ -147,6 +185,22 @@ public class HTTP2Stream {
         }
     }
 
+    /** send RST_STREAM, the queued DATA of the stream is dropped since no frame of a stream may follow its reset */
+    private void sendResetStream(HTTP2ErrorCode errorCode) throws IOException {
+        byte[] frame = new ResetStreamFrame(errorCode, streamId).encode();
+        connection.writer.reset(dataQueue, os -> os.write(frame));
+        logger.log(Level.TRACE, () -> "Sent ResetStream " + errorCode + " on stream " + streamId);
+    }
+
+    /**
+     * no more DATA will be received on the stream. The request body is finished here, since a reader or the response
+     * close waits for the end of the body, not for the half closed state.
+     */
+    private void halfClose() {
+        halfClosed = true;
+        dataIn.finish();
+    }
+
     public void processFrame(BaseFrame frame) throws HTTP2Exception, IOException {
 
         switch (frame.getHeader().getType()) {
@@ -155,29 +209,36 @@ public class HTTP2Stream {
             if(halfClosed) {
                 throw new HTTP2Exception(HTTP2ErrorCode.STREAM_CLOSED);
             }
-            halfClosed = frame.getHeader().getFlags().contains(FrameFlag.END_STREAM);
+            if(frame.getHeader().getFlags().contains(FrameFlag.END_STREAM)) {
+                halfClose();
+            }
             performRequest();
             break;
         case DATA:
             DataFrame dataFrame = (DataFrame) frame;
-            logger.log(Level.TRACE,()->"received data frame, length "+dataFrame.body.length+" on stream "+streamId);
+            logger.log(Level.TRACE,()->"received data frame, length "+dataFrame.length+" on stream "+streamId);
             if(halfClosed) {
                 throw new HTTP2Exception(HTTP2ErrorCode.STREAM_CLOSED);
             }
             if(!streamOpen) {
                 throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR);
             }
-            dataIn.enqueue(dataFrame.body);
-            dataInSize += dataFrame.body.length;
+            dataInSize += dataFrame.length;
+            if(dataFrame.length==0) {
+                dataFrame.release();
+            } else if(!dataIn.enqueue(dataFrame)) {
+                sendResetStream(HTTP2ErrorCode.FLOW_CONTROL_ERROR);
+                close();
+                break;
+            }
             if (dataFrame.getHeader().getFlags().contains(FrameFlag.END_STREAM)) {
                 long expected = expectedSize();
                 if(expected!=-1 && dataInSize!=expected) {
-                    connection.sendResetStream(HTTP2ErrorCode.PROTOCOL_ERROR, streamId);
+                    sendResetStream(HTTP2ErrorCode.PROTOCOL_ERROR);
                     close();
                     break;
                 }
-                halfClosed = true;
-                dataIn.wakeupReader();
+                halfClose();
             }
             break;
         case PRIORITY:
@@ -188,15 +249,18 @@ public class HTTP2Stream {
         case RST_STREAM:
             ResetStreamFrame resetFrame = (ResetStreamFrame) frame;
             logger.log(Level.DEBUG,"received reset stream "+resetFrame.errorCode+", on stream "+streamId);
-            halfClosed = true;
+            // the peer discards frames of a reset stream, so the queued DATA is not sent
+            connection.writer.discard(dataQueue);
+            halfClose();
             close();
             break;
         case WINDOW_UPDATE:
             int windowSizeIncrement = ((WindowUpdateFrame)frame).getWindowSizeIncrement();
             if(sendWindow.addAndGet(windowSizeIncrement)> 2147483647) {
-                connection.sendResetStream(HTTP2ErrorCode.FLOW_CONTROL_ERROR, streamId);
+                sendResetStream(HTTP2ErrorCode.FLOW_CONTROL_ERROR);
                 close();
             }
+            sendWindowUpdated();
             logger.log(Level.DEBUG,"received window update "+windowSizeIncrement+", new size "+sendWindow.get()+", on stream "+streamId);
             break;
         default:
@@ -232,18 +296,106 @@ public class HTTP2Stream {
      */
     public void writeResponseHeaders(boolean closeStream) throws IOException {
         if (headersSent.compareAndSet(false, true)) {
-            connection.lock();
-            try {
-                HPackContext.writeHeaderFrame(responseHeaders, connection.outputStream, streamId, closeStream);
-                if (closeStream) {
-                    streamOutputClosed = true;
-                }
-            } finally {
-                connection.unlock();
+            applyResponsePriority();
+            // the encoder lock is held while queuing so the frames are written in the order the dynamic table was updated
+            synchronized (connection.hpackEncoder) {
+                byte[] frame = connection.hpackEncoder.encodeHeaderFrame(responseHeaders, streamId, closeStream);
+                connection.writer.write(os -> os.write(frame), closeStream);
+            }
+            responseFrames++;
+            if (closeStream) {
+                streamOutputClosed = true;
             }
         }
     }
 
+    /**
+     * send the response headers for a body of the given length. A body that fits in a single DATA frame and the
+     * current send windows is collected, and written with the headers as a HEADERS frame and one DATA frame carrying
+     * END_STREAM when the response body is closed.
+     * @param contentLength the length of the body, 0 if unknown, or -1 if there is no body
+     */
+    public void sendResponseHeaders(long contentLength) throws IOException {
+        if (contentLength > 0 && contentLength <= http2OutputStream.max_frame_size && !headersSent.get()
+                && contentLength <= sendWindow.get() && contentLength <= connection.sendWindow.get()) {
+            outputStream.expect((int) contentLength);
+            return;
+        }
+        writeResponseHeaders(contentLength == -1);
+    }
+
+    /** the handler may override the priority requested by the client, RFC 9218 section 5 */
+    private void applyResponsePriority() {
+        String priority = responseHeaders.getFirst("Priority");
+        if (priority != null) {
+            updatePriority(priority);
+        }
+    }
+
+    /**
+     * write the deferred response headers and the complete body, the send windows must have been acquired
+     */
+    private void writeSingleFrameResponse(byte[] body, int length, boolean flush) throws IOException {
+        applyResponsePriority();
+        synchronized (connection.hpackEncoder) {
+            byte[] headers = connection.hpackEncoder.encodeHeaderFrame(responseHeaders, streamId, false);
+            connection.writer.writeResponse(dataQueue, headers, streamId, body, length, flush);
+        }
+        streamOutputClosed = true;
+        responseFrames += 2;
+        connection.stats.bytesSent.addAndGet(length);
+        connection.stats.singleFrameResponses.incrementAndGet();
+        logger.log(Level.TRACE,() -> "sent single frame response, length "+length+" on stream "+streamId);
+    }
+
+    /**
+     * send an informational (1xx) response, e.g. 103 Early Hints. It must be sent before the final response headers.
+     * @param headers the response headers including the ':status'
+     */
+    public void writeInformationalHeaders(Headers headers) throws IOException {
+        if (headersSent.get() || outputStream.isDeferred()) {
+            throw new IOException("response headers already sent");
+        }
+        synchronized (connection.hpackEncoder) {
+            byte[] frame = connection.hpackEncoder.encodeHeaderFrame(headers, streamId, false);
+            connection.writer.write(os -> os.write(frame), true);
+        }
+    }
+
+    /**
+     * promise a response for a request the client will need, and handle the request on a new server initiated stream
+     * @param requestHeaders the promised request headers, including the ':method', ':scheme', ':authority' and ':path'
+     * @return false if the push was not sent, because the peer disabled push, it would exceed the peer's concurrent
+     * stream limit, or the stream is closed or was itself pushed
+     */
+    public boolean push(Headers requestHeaders) throws IOException {
+        if (streamId % 2 == 0 || !streamOpen) {
+            return false;
+        }
+        int promisedStreamId = connection.reservePush();
+        if (promisedStreamId == -1) {
+            return false;
+        }
+        HTTP2Stream pushed = new HTTP2Stream(promisedStreamId, connection, requestHeaders, handler);
+        // the promised stream is reserved, it has no request body
+        pushed.halfClose();
+        connection.http2Streams.put(promisedStreamId, pushed);
+        try {
+            // the promise is queued before any DATA of this stream, so the client sees it before the content that references it
+            synchronized (connection.hpackEncoder) {
+                byte[] frame = connection.hpackEncoder.encodePushPromiseFrame(requestHeaders, streamId, promisedStreamId);
+                connection.writer.write(os -> os.write(frame), false);
+            }
+            pushed.performRequest();
+        } catch (IOException | HTTP2Exception e) {
+            pushed.close();
+            throw e instanceof IOException ioe ? ioe : new IOException(e);
+        }
+        connection.stats.pushes.incrementAndGet();
+        logger.log(Level.TRACE, () -> "pushed " + requestHeaders.getFirst(":path") + " on stream " + promisedStreamId + " for stream " + streamId);
+        return true;
+    }
+
     public InetSocketAddress getLocalAddress() {
         return connection.getLocalAddress();
     }
@@ -278,61 +430,81 @@ public class HTTP2Stream {
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
             connection.stats.bytesSent.addAndGet(len);
-            // test outside of lock so other streams can progress
-            while(sendWindow.get()<=0 && !connection.isClosed()) {
-                connection.stats.pauses.incrementAndGet();
-                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
-            }
             writeResponseHeaders(false);
             if(streamOutputClosed) {
                 throw new IOException("output stream was closed during headers send");
             }
             while(len>0) {
-                int _len = Math.min(Math.min(len,max_frame_size),(int)Math.min(connection.sendWindow.get(),sendWindow.get()));
-                if(_len<=0) {
-                    connection.stats.pauses.incrementAndGet();
-                    connection.lock();
-                    try {
-                        connection.stats.flushes.incrementAndGet();
-                        connection.outputStream.flush();
-                    } finally {
-                        connection.unlock();
-                    }
-                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
-                    if(connection.isClosed()) {
-                        throw new IOException("connection closed");
+                int _len = acquireWindow(Math.min(len,max_frame_size));
+                connection.writer.writeData(dataQueue, streamId, FrameFlag.NONE, b, off, _len, false);
+                responseFrames++;
+                off+=_len;
+                len-=_len;
+                logger.log(Level.TRACE,() -> "sent data frame, length "+_len+", new send window "+sendWindow.get()+" on stream "+streamId);
+            }
+        }
+        /**
+         * reserve space in the stream and connection send windows, waiting for a WINDOW_UPDATE if either is exhausted
+         * @return the number of bytes reserved, between 1 and len
+         */
+        private int acquireWindow(int len) throws IOException {
+            boolean paused = false;
+            while(true) {
+                if(connection.isClosed()) {
+                    throw new IOException("connection closed");
+                }
+                if(!streamOpen) {
+                    throw new IOException("stream closed");
+                }
+                if(Thread.interrupted()) {
+                    throw new IOException("interrupted");
+                }
+                // only this thread reduces the stream window, so it cannot shrink below available other than by a SETTINGS change
+                long available = sendWindow.get();
+                if(available>0) {
+                    int acquired = connection.acquireSendWindow((int)Math.min(len,available));
+                    if(acquired>0) {
+                        sendWindow.addAndGet(-acquired);
+                        return acquired;
                     }
-                    int remaining = len;
-                    // logger.log(Level.TRACE,() -> "paused sending data frame, remaining "+remaining+", length "+_len+" on stream "+streamId);
-                    continue;
                 }
-                if(connection.sendWindow.addAndGet(-_len)<0) {
-                    // if we can't get the space from the connection window, need to retry
-                    connection.sendWindow.addAndGet(_len);
-                    continue;
+                if(!paused) {
+                    paused = true;
+                    connection.stats.pauses.incrementAndGet();
                 }
-                connection.lock();
-                try {
-                    FrameHeader.writeTo(connection.outputStream, _len, FrameType.DATA, FrameFlag.NONE, streamId);
-                    connection.outputStream.write(b,off,_len);
-                    connection.stats.framesSent.incrementAndGet();
-                } finally {
-                    connection.unlock();
+                // the peer will not send a WINDOW_UPDATE until it receives the pending data
+                connection.writer.flush();
+                if(available>0) {
+                    connection.awaitSendWindow();
+                } else {
+                    awaitSendWindow();
                 }
-                // byte[] header = FrameHeader.encode(_len, FrameType.DATA, FrameFlag.NONE, streamId);
-                // byte[] data = Arrays.copyOfRange(b,off, len);
-                // connection.enqueue(List.of(header,data));
-                off+=_len;
-                len-=_len;
-                sendWindow.addAndGet(-_len);
-                logger.log(Level.TRACE,() -> "sent data frame, length "+_len+", new send window "+sendWindow.get()+" on stream "+streamId);
             }
         }
+        /**
+         * reserve the whole body in the stream and connection send windows without waiting
+         * @return false if either window is too small, in which case nothing is reserved
+         */
+        private boolean tryAcquireWindow(int len) {
+            // only this thread reduces the stream window
+            if(sendWindow.get()<len || !connection.tryAcquireSendWindow(len)) {
+                return false;
+            }
+            sendWindow.addAndGet(-len);
+            return true;
+        }
         @Override
         public void flush() throws IOException {
         }
         @Override
         public void close() throws IOException {
+            close(null, 0);
+        }
+        /**
+         * @param body the body of a response whose headers were deferred, sized to the declared length, or null
+         * @param length the number of bytes written to the body
+         */
+        void close(byte[] body, int length) throws IOException {
             if(closed) return;
             try {
                 if(connection.isClosed()) {
@@ -341,55 +513,150 @@ public class HTTP2Stream {
                     }
                     return;
                 }
-                writeResponseHeaders(false);
-                connection.lock();
-                boolean lastRequest = connection.requestsInProgress.decrementAndGet() == 0;
-                try {
-                    if(!streamOutputClosed) {
-                        FrameHeader.writeTo(connection.outputStream, 0, FrameType.DATA, END_STREAM, streamId);
-                        connection.stats.framesSent.incrementAndGet();
-                    }
-                    if(lastRequest) {
-                        connection.outputStream.flush();
-                        connection.stats.flushes.incrementAndGet();
-                    }
-                } finally {
-                    connection.unlock();
+                if(!streamOpen) {
+                    // the stream was reset, no frame of the stream may follow the RST_STREAM
+                    headersSent.set(true);
+                    connection.requestsInProgress.decrementAndGet();
+                    return;
+                }
+                if(body!=null && length<body.length && headersSent.compareAndSet(false,true)) {
+                    // the response would be malformed, RFC 9113 section 8.1.1
+                    logger.log(Level.DEBUG,"response body of "+length+" bytes is shorter than the content length "+body.length+" on stream "+streamId);
+                    streamOutputClosed = true;
+                    connection.requestsInProgress.decrementAndGet();
+                    sendResetStream(HTTP2ErrorCode.PROTOCOL_ERROR);
+                    return;
+                }
+                if(body!=null && (headersSent.get() || !tryAcquireWindow(length))) {
+                    // the windows shrank since the headers were deferred, send the body the regular way
+                    write(body, 0, length);
+                    body = null;
+                }
+                if(body==null) {
+                    writeResponseHeaders(false);
+                }
+                // unless disabled, the flush is delayed while other streams are in progress, since they will flush when they complete
+                boolean flush = connection.requestsInProgress.decrementAndGet() == 0 || ServerConfig.http2DisableFlushDelay();
+                if(body!=null) {
+                    headersSent.set(true);
+                    writeSingleFrameResponse(body, length, flush);
+                } else if(!streamOutputClosed) {
+                    connection.writer.write(dataQueue, os -> FrameHeader.writeTo(os, 0, FrameType.DATA, END_STREAM, streamId), flush);
+                    responseFrames++;
                 }
                 dataIn.close();
             } finally {
                 connection.stats.activeStreams.decrementAndGet();
+                connection.stats.responses.incrementAndGet();
+                connection.stats.responseFrames.addAndGet(responseFrames);
                 closed=true;
                 HTTP2Stream.this.close();
             }
         }
     }
 
-    // the data InputStream passed to handlers
+    /**
+     * the response body passed to handlers. A body with a known length of at most one frame is collected and sent
+     * with the deferred headers when closed. Otherwise the writes are buffered, the buffer is allocated on the first
+     * write so a response without a body does not allocate one.
+     */
+    private class ResponseBody extends OutputStream {
+        private byte[] single;
+        private int count;
+        private OutputStream buffered;
+
+        /** collect a body of the given length, the response headers are deferred until it is closed or flushed */
+        void expect(int length) {
+            single = new byte[length];
+        }
+
+        boolean isDeferred() {
+            return single != null;
+        }
+
+        private OutputStream buffered() throws IOException {
+            if (single != null) {
+                // the handler wrote more than the content length or flushed, send the collected data with the headers
+                byte[] body = single;
+                single = null;
+                http2OutputStream.write(body, 0, count);
+            }
+            if (buffered == null) {
+                buffered = new NoSyncBufferedOutputStream(http2OutputStream);
+            }
+            return buffered;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (single != null && count < single.length) {
+                single[count++] = (byte) b;
+                return;
+            }
+            buffered().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (single != null && len <= single.length - count) {
+                System.arraycopy(b, off, single, count, len);
+                count += len;
+                return;
+            }
+            buffered().write(b, off, len);
+        }
+
+        /** sends the headers and the data written so far, leaving the single frame path if the body is deferred */
+        @Override
+        public void flush() throws IOException {
+            if (single != null || buffered != null) {
+                buffered().flush();
+            }
+            connection.writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (single != null) {
+                byte[] body = single;
+                single = null;
+                http2OutputStream.close(body, count);
+            } else if (buffered != null) {
+                buffered.close();
+            } else {
+                http2OutputStream.close();
+            }
+        }
+    }
+
+    // the data InputStream passed to handlers, the DATA frame buffers are released as they are consumed
     private class DataIn extends InputStream {
-        private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+        private final ReceiveBuffer buffer = new ReceiveBuffer(ServerConfig.http2MaxFrameSize(), connection.windowTuner.maxStreamWindow());
         private volatile Thread reader;
-        /** offset into the top of the queue array */
-        private int offset = 0;
 
         public DataIn() {
         }
 
-        void enqueue(byte[] data) {
-            queue.add(data);
-            LockSupport.unpark(reader);
+        /** @return false if the peer exceeded the stream window */
+        boolean enqueue(DataFrame data) {
+            return buffer.offer(data);
         }
-        
-        void wakeupReader() {
-            LockSupport.unpark(reader);
+
+        /** no more data will be received, a blocked reader reads the remaining data and then the end of stream */
+        void finish() {
+            buffer.finish();
         }
 
         @Override
         public void close() throws IOException {
             if(Thread.currentThread()==reader || reader == null) {
-                readAllBytes();
+                // discard the remaining data without copying
+                while(await()) {
+                    updateReceiveWindow((int)buffer.skip(Long.MAX_VALUE));
+                }
             } else {
-                LockSupport.unpark(reader);
+                buffer.wakeup();
             }
         }
 
@@ -401,49 +668,78 @@ public class HTTP2Stream {
             return n == -1 ? -1 : single[0] & 0xFF;
         }
 
+        /** @return false if the stream is half closed and all data has been read */
+        private boolean await() throws IOException {
+            reader = Thread.currentThread();
+            return buffer.await();
+        }
+
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if(len==0) {
+                return 0;
+            }
+            if(!await()) {
+                return -1;
+            }
+            int read = buffer.read(b, off, len);
+            updateReceiveWindow(read);
+            return read;
+        }
+
+        @Override
+        public int readNBytes(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
             int read = 0;
-            try {
-                reader = Thread.currentThread();
-                for(;len>0;) {
-                    byte[] data;
-                    while((data=queue.peek())==null) {
-                        if(read>0) {
-                            return read;
-                        }
-                        if(halfClosed) return -1;
-                        LockSupport.park();
-                        if(Thread.interrupted()) {
-                            throw new IOException("interrupted");
-                        }
-                    } 
-                    int available = data.length-offset;
-                    int bytesToRead = Math.min(len, available);
-                    System.arraycopy(data, offset, b, off, bytesToRead);
-                    offset+=bytesToRead;
-                    off+=bytesToRead;
-                    len-=bytesToRead;
-                    available-=bytesToRead;
-                    read+=bytesToRead;
-                    if(available==0) { // remove top buffer from queue
-                        queue.poll();
-                        offset=0;
-                    }
-                }
-                return read;
-            } finally {
-                if(receiveWindow.addAndGet(-read)<initialWindowSize/2) {
-                    receiveWindow.addAndGet(initialWindowSize/2);
-                    connection.lock();
-                    try {
-                        WindowUpdateFrame frame = new WindowUpdateFrame(streamId, initialWindowSize/2);
-                        frame.writeTo(connection.outputStream);
-                        logger.log(Level.TRACE, () -> "sent stream window update, receive window "+receiveWindow.get()+" on stream "+streamId);
-                    } finally {
-                        connection.unlock();
-                    }
-                }
+            while(read<len && await()) {
+                read += buffer.read(b, off+read, len-read);
+            }
+            updateReceiveWindow(read);
+            return read;
+        }
+
+        /** writes the frame payloads directly from the receive buffers */
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            long transferred = 0;
+            while(await()) {
+                long n = buffer.transferTo(out);
+                updateReceiveWindow((int)n);
+                transferred+=n;
+            }
+            return transferred;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if(n<=0 || !await()) {
+                return 0;
+            }
+            long skipped = buffer.skip(n);
+            updateReceiveWindow((int)skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.available();
+        }
+
+        /**
+         * the consumed bytes are returned to the peer once half the window has been read, the WINDOW_UPDATE is
+         * queued on the connection writer without waiting for other writers
+         */
+        private void updateReceiveWindow(int read) throws IOException {
+            // the window is replenished to the current autotuned size
+            int windowSize = connection.windowTuner.streamWindow();
+            long window = receiveWindow.addAndGet(-read);
+            if(window<windowSize/2) {
+                int increment = (int)(windowSize-window);
+                receiveWindow.addAndGet(increment);
+                WindowUpdateFrame frame = new WindowUpdateFrame(streamId, increment);
+                connection.writer.write(frame::writeTo, true);
+                logger.log(Level.TRACE, () -> "sent stream window update, receive window "+receiveWindow.get()+" on stream "+streamId);
             }
         }
     }
@@ -0,0 +1,56 @@
+package robaho.net.httpserver.http2;
+
+/**
+ * the RFC 9218 priority parameters of a stream. Lower urgency values are sent first, and the DATA frames of
+ * incremental streams with the same urgency are interleaved, while non-incremental streams are sent one at a time.
+ */
+public record Priority(int urgency, boolean incremental) {
+    public static final int LEVELS = 8;
+    public static final Priority DEFAULT = new Priority(3, false);
+
+    /**
+     * parse a priority field value, e.g. "u=1, i". Unknown parameters and invalid values are ignored, as required
+     * by RFC 9218 section 4.
+     * @param value the header or PRIORITY_UPDATE field value, may be null
+     * @param defaults the parameters used when not present in the value
+     */
+    public static Priority parse(String value, Priority defaults) {
+        if (value == null || value.isEmpty()) {
+            return defaults;
+        }
+        int urgency = defaults.urgency;
+        boolean incremental = defaults.incremental;
+        int start = 0;
+        while (start < value.length()) {
+            int end = value.indexOf(',', start);
+            if (end == -1) {
+                end = value.length();
+            }
+            String member = value.substring(start, end).trim();
+            // parameters on the member value are not used
+            int params = member.indexOf(';');
+            if (params != -1) {
+                member = member.substring(0, params);
+            }
+            int eq = member.indexOf('=');
+            String key = eq == -1 ? member : member.substring(0, eq);
+            String item = eq == -1 ? "?1" : member.substring(eq + 1).trim();
+            if (key.equals("u")) {
+                if (item.length() == 1 && item.charAt(0) >= '0' && item.charAt(0) <= '7') {
+                    urgency = item.charAt(0) - '0';
+                }
+            } else if (key.equals("i")) {
+                if (item.equals("?1")) {
+                    incremental = true;
+                } else if (item.equals("?0")) {
+                    incremental = false;
+                }
+            }
+            start = end + 1;
+        }
+        if (urgency == defaults.urgency && incremental == defaults.incremental) {
+            return defaults;
+        }
+        return new Priority(urgency, incremental);
+    }
+}
@@ -0,0 +1,38 @@
+package robaho.net.httpserver.http2;
+
+/**
+ * counts events in fixed time windows, used to bound the rate of frames that are cheap for a client to send but
+ * cost the server work, e.g. a stream that is reset immediately after its handler was dispatched.
+ * <p>
+ * Not thread-safe, it is only used by the connection reader thread.
+ */
+class RateLimit {
+    private final int limit;
+    private final long windowNanos;
+    private long windowStart;
+    private int count;
+
+    /**
+     * @param limit the maximum number of events per window, or -1 for no limit
+     */
+    RateLimit(int limit, long windowNanos, long now) {
+        this.limit = limit;
+        this.windowNanos = windowNanos;
+        this.windowStart = now;
+    }
+
+    /**
+     * record an event
+     * @return false if the limit for the current window has been exceeded
+     */
+    boolean acquire(long now) {
+        if (limit < 0) {
+            return true;
+        }
+        if (now - windowStart >= windowNanos) {
+            windowStart = now;
+            count = 0;
+        }
+        return ++count <= limit;
+    }
+}
@@ -0,0 +1,259 @@
+package robaho.net.httpserver.http2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+import robaho.net.httpserver.http2.frame.DataFrame;
+
+/**
+ * the received DATA of a stream, a single-producer single-consumer ring of payload slices. The connection reader
+ * thread is the producer, the handler thread reading the request body the consumer, and neither takes a lock.
+ * <p>
+ * Payloads of at least half a chunk are queued without copying, and their frame buffer is released once consumed.
+ * Smaller payloads are appended to a chunk, so the number of slots needed is bounded by the stream receive window
+ * regardless of the frame sizes the peer uses. The ring grows up to that bound, a peer that exceeds it has ignored
+ * flow control.
+ */
+class ReceiveBuffer {
+    private static final int INITIAL_SLOTS = 16;
+
+    private static final class Slice {
+        final byte[] body;
+        final int offset;
+        // the frame to release once consumed, null for a chunk
+        final DataFrame frame;
+        // the chunk is appended to until sealed
+        volatile int length;
+        volatile boolean sealed;
+
+        Slice(DataFrame frame) {
+            this.body = frame.body;
+            this.offset = frame.offset;
+            this.frame = frame;
+            this.length = frame.length;
+            this.sealed = true;
+        }
+
+        Slice(int chunkSize) {
+            this.body = new byte[chunkSize];
+            this.offset = 0;
+            this.frame = null;
+        }
+    }
+
+    private final int chunkSize;
+    private final int maxSlots;
+
+    // only the producer replaces the array, the consumer reads it after reading the tail
+    private volatile Slice[] slots = new Slice[INITIAL_SLOTS];
+    private volatile long head;
+    private volatile long tail;
+    // the chunk the producer is appending to
+    private Slice open;
+    // the consumer position in the slice at the head
+    private int position;
+
+    private volatile Thread consumer;
+    private volatile boolean parked;
+    private volatile boolean finished;
+
+    /**
+     * @param chunkSize the maximum frame size
+     * @param maxWindow the maximum stream receive window
+     */
+    ReceiveBuffer(int chunkSize, int maxWindow) {
+        this.chunkSize = chunkSize;
+        // every other slot may be a chunk holding a single byte, the others a frame of at least half a chunk
+        int bound = (int)Math.min(1 << 30, 2L * maxWindow / (chunkSize / 2) + 2);
+        this.maxSlots = Math.max(INITIAL_SLOTS, Integer.highestOneBit(bound - 1) << 1);
+    }
+
+    /**
+     * called by the producer. The frame is released when consumed, or immediately if copied.
+     * @return false if the buffer is full, since the peer exceeded the stream window
+     */
+    boolean offer(DataFrame frame) {
+        if (frame.length < chunkSize / 2) {
+            Slice chunk = open;
+            if (chunk != null && chunk.body.length - chunk.length >= frame.length) {
+                System.arraycopy(frame.body, frame.offset, chunk.body, chunk.length, frame.length);
+                chunk.length += frame.length;
+                frame.release();
+                signal();
+                return true;
+            }
+            chunk = new Slice(chunkSize);
+            System.arraycopy(frame.body, frame.offset, chunk.body, 0, frame.length);
+            chunk.length = frame.length;
+            frame.release();
+            if (!publish(chunk)) {
+                return false;
+            }
+            open = chunk;
+            return true;
+        }
+        return publish(new Slice(frame));
+    }
+
+    private boolean publish(Slice slice) {
+        long t = tail;
+        Slice[] slots = this.slots;
+        if (t - head == slots.length) {
+            if (slots.length == maxSlots) {
+                return false;
+            }
+            slots = grow(slots, t);
+        }
+        if (open != null) {
+            // the consumer may release a sealed chunk, so it is no longer appended to
+            open.sealed = true;
+            open = null;
+        }
+        slots[(int)t & (slots.length - 1)] = slice;
+        tail = t + 1;
+        signal();
+        return true;
+    }
+
+    private Slice[] grow(Slice[] slots, long t) {
+        Slice[] grown = new Slice[slots.length << 1];
+        // the consumer may advance the head concurrently, copying the released slots is harmless
+        for (long i = head; i < t; i++) {
+            grown[(int)i & (grown.length - 1)] = slots[(int)i & (slots.length - 1)];
+        }
+        this.slots = grown;
+        return grown;
+    }
+
+    private void signal() {
+        if (parked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * no more data will be offered, wakes the consumer. May be called by any thread.
+     */
+    void finish() {
+        finished = true;
+        LockSupport.unpark(consumer);
+    }
+
+    /** wake the consumer, e.g. when the stream is closed */
+    void wakeup() {
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * @return the head slice with unread data, releasing consumed slices, or null if there is none
+     */
+    private Slice current() {
+        long h = head;
+        while (h != tail) {
+            Slice[] slots = this.slots;
+            int index = (int)h & (slots.length - 1);
+            Slice slice = slots[index];
+            // the sealed flag must be read before the length, so bytes appended before sealing are not missed
+            boolean sealed = slice.sealed;
+            if (position < slice.length) {
+                return slice;
+            }
+            if (!sealed) {
+                return null;
+            }
+            slots[index] = null;
+            position = 0;
+            head = ++h;
+            if (slice.frame != null) {
+                slice.frame.release();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * called by the consumer, wait until data is available
+     * @return false if the buffer is finished and all data has been consumed
+     */
+    boolean await() throws IOException {
+        consumer = Thread.currentThread();
+        while (current() == null) {
+            if (finished) {
+                // data offered before finishing may not have been visible
+                return current() != null;
+            }
+            parked = true;
+            try {
+                if (current() == null && !finished) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                parked = false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("interrupted");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * called by the consumer, copies the available data without waiting
+     * @return the number of bytes read
+     */
+    int read(byte[] b, int off, int len) {
+        int read = 0;
+        Slice slice;
+        while (read < len && (slice = current()) != null) {
+            int n = Math.min(len - read, slice.length - position);
+            System.arraycopy(slice.body, slice.offset + position, b, off + read, n);
+            position += n;
+            read += n;
+        }
+        return read;
+    }
+
+    /**
+     * called by the consumer, writes the available data directly from the receive buffers without waiting
+     * @return the number of bytes written
+     */
+    long transferTo(OutputStream out) throws IOException {
+        long transferred = 0;
+        Slice slice;
+        while ((slice = current()) != null) {
+            int n = slice.length - position;
+            out.write(slice.body, slice.offset + position, n);
+            position += n;
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    /**
+     * called by the consumer, discards the available data without waiting
+     * @return the number of bytes skipped
+     */
+    long skip(long n) {
+        long skipped = 0;
+        Slice slice;
+        while (skipped < n && (slice = current()) != null) {
+            int count = (int)Math.min(n - skipped, slice.length - position);
+            position += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    /** called by the consumer, @return the number of bytes that can be read without waiting */
+    int available() {
+        long available = 0;
+        long t = tail;
+        Slice[] slots = this.slots;
+        for (long i = head; i < t; i++) {
+            available += slots[(int)i & (slots.length - 1)].length;
+        }
+        return (int)Math.min(Integer.MAX_VALUE, available - position);
+    }
+}
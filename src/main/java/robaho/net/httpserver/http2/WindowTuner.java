@@ -0,0 +1,107 @@
+package robaho.net.httpserver.http2;
+
+/**
+ * receive window autotuning. The bandwidth-delay product is estimated from the DATA received during a PING round
+ * trip: a sample that fills most of the current window while the measured bandwidth is still increasing shows that
+ * flow control is limiting the peer, so the windows are grown to twice the sample, up to the maximum. This is the
+ * estimator used by gRPC.
+ * <p>
+ * The samples are taken by the connection reader thread, the window sizes are read by the stream threads.
+ */
+class WindowTuner {
+    /** the payload that identifies the PING frames sent to measure the round trip time */
+    static final byte[] PING_PAYLOAD = {'B', 'D', 'P', 0, 0, 0, 0, 0};
+
+    private static final double BETA = 2.0 / 3.0;
+    private static final double GAMMA = 2.0;
+    private static final double RTT_ALPHA = 0.9;
+
+    private final int initialConnectionWindow;
+    private final int initialStreamWindow;
+    private final int maxWindow;
+    private final boolean enabled;
+
+    private volatile int connectionWindow;
+    private volatile int streamWindow;
+
+    private int bdp;
+    private boolean pingOutstanding;
+    private long pingSentNanos;
+    private long sample;
+    private double rttNanos;
+    private double maxBandwidth;
+
+    /**
+     * @param maxWindow the maximum size of the grown windows, autotuning is disabled if not larger than the initial windows
+     */
+    WindowTuner(int connectionWindow, int streamWindow, int maxWindow) {
+        this.initialConnectionWindow = this.connectionWindow = connectionWindow;
+        this.initialStreamWindow = this.streamWindow = streamWindow;
+        this.maxWindow = maxWindow;
+        this.bdp = Math.min(connectionWindow, streamWindow);
+        this.enabled = maxWindow > bdp;
+    }
+
+    /** the size the connection receive window is replenished to */
+    int connectionWindow() {
+        return connectionWindow;
+    }
+
+    /** the size the stream receive windows are replenished to */
+    int streamWindow() {
+        return streamWindow;
+    }
+
+    /** @return the largest stream window that may be advertised */
+    int maxStreamWindow() {
+        return Math.max(initialStreamWindow, maxWindow);
+    }
+
+    /**
+     * @return true if a PING must be sent to start a new sample
+     */
+    boolean dataReceived(int length, long nanos) {
+        if (!enabled || bdp >= maxWindow) {
+            return false;
+        }
+        if (pingOutstanding) {
+            sample += length;
+            return false;
+        }
+        pingOutstanding = true;
+        pingSentNanos = nanos;
+        sample = length;
+        return true;
+    }
+
+    /**
+     * called when the PING is acknowledged
+     * @return true if the windows were grown
+     */
+    boolean pingAcknowledged(long nanos) {
+        if (!pingOutstanding) {
+            return false;
+        }
+        pingOutstanding = false;
+        double rtt = Math.max(1, nanos - pingSentNanos);
+        rttNanos = rttNanos == 0 ? rtt : rttNanos + (rtt - rttNanos) * RTT_ALPHA;
+        // the sample includes data sent up to half a round trip before the ping
+        double bandwidth = sample / (rttNanos * 1.5);
+        if (bandwidth > maxBandwidth) {
+            maxBandwidth = bandwidth;
+        } else {
+            return false;
+        }
+        if (sample < BETA * bdp) {
+            return false;
+        }
+        bdp = (int) Math.min(GAMMA * sample, maxWindow);
+        connectionWindow = Math.max(initialConnectionWindow, bdp);
+        streamWindow = Math.max(initialStreamWindow, bdp);
+        return true;
+    }
+
+    long rttMillis() {
+        return (long) (rttNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,34 @@
+package robaho.net.httpserver.http2.frame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * a bounded pool of equal sized buffers. Buffers are acquired by the connection reader and released by the stream
+ * handler threads once the data is consumed, a buffer that is not released is simply garbage collected.
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> buffers;
+
+    BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+
+    int available() {
+        return buffers.size();
+    }
+}
@@ -2,36 +2,55 @@ package robaho.net.httpserver.http2.frame;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Arrays;
 
 import robaho.net.httpserver.http2.HTTP2ErrorCode;
 import robaho.net.httpserver.http2.HTTP2Exception;
 
+/**
+ * the payload is a slice of the body buffer, excluding any padding. If the buffer is pooled it must be released
+ * once the data is consumed, and not accessed afterwards.
+ */
 public class DataFrame extends BaseFrame {
 
     public final byte[] body;
+    public final int offset;
+    public final int length;
+    private final BufferPool pool;
+
 	public DataFrame(FrameHeader header,byte[] body) {
+		this(header, body, 0, body.length, null);
+	}
+	DataFrame(FrameHeader header,byte[] body,int offset,int length,BufferPool pool) {
 		super(header);
         this.body = body;
+        this.offset = offset;
+        this.length = length;
+        this.pool = pool;
 	}
     @Override
     public void writeTo(OutputStream outputStream) throws IOException {
-        outputStream.write(body);
-    }   
-    public static BaseFrame parse(byte[] body, FrameHeader frameHeader) throws HTTP2Exception {
-        int index = 0;
+        outputStream.write(body, offset, length);
+    }
+    /** return the buffer to the pool it was acquired from, if any */
+    public void release() {
+        if (pool != null) {
+            pool.release(body);
+        }
+    }
+    static BaseFrame parse(byte[] body, int length, FrameHeader frameHeader, BufferPool pool) throws HTTP2Exception {
+        int offset = 0;
         int padding = 0;
         if(frameHeader.getFlags().contains(FrameFlag.PADDED)) {
-            padding = (body[index] & 0xFF)+1;
-            if(padding > body.length) {
+            if(length == 0) {
+                throw new HTTP2Exception(HTTP2ErrorCode.FRAME_SIZE_ERROR,"padded frame without pad length");
+            }
+            padding = body[0] & 0xFF;
+            offset = 1;
+            if(offset + padding > length) {
                 throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR,"padding exceeds frame size");
             }
         }
-        if(padding>0) {
-            return new DataFrame(frameHeader, Arrays.copyOfRange(body,index,body.length-padding));
-        } else {
-            return new DataFrame(frameHeader, body);
-        }
+        return new DataFrame(frameHeader, body, offset, length - offset - padding, pool);
     }
     public byte[] encode() {
         throw new UnsupportedOperationException();
@@ -23,6 +23,16 @@ public enum FrameFlag {
 
     public static final FlagSet NONE = new FlagSet(0,false);
 
+    // the flag sets are immutable, so a received frame header shares them rather than allocating
+    private static final FlagSet[] FLAGS = new FlagSet[MASK+1];
+    private static final FlagSet[] ACK_FLAGS = new FlagSet[MASK+1];
+    static {
+        for (int i = 0; i <= MASK; i++) {
+            FLAGS[i] = new FlagSet(i, false);
+            ACK_FLAGS[i] = new FlagSet(i, true);
+        }
+    }
+
     public byte getValue() {
         return value;
     }
@@ -31,7 +41,8 @@ public enum FrameFlag {
         if (value == 0) {
             return NONE;
         }
-        return new FlagSet(value & MASK, type == FrameType.SETTINGS || type == FrameType.PING);
+        int flags = value & MASK;
+        return type == FrameType.SETTINGS || type == FrameType.PING ? ACK_FLAGS[flags] : FLAGS[flags];
     }
 
     public static class FlagSet {
@@ -0,0 +1,74 @@
+package robaho.net.httpserver.http2.frame;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import robaho.net.httpserver.http2.HTTP2ErrorCode;
+import robaho.net.httpserver.http2.HTTP2Exception;
+
+/**
+ * reads the frames of a connection. The frame header is read into a reusable buffer, and the payload of a DATA
+ * frame is read into a pooled buffer that is released when the stream consumes it. Since the buffer is retained
+ * until then, only frames that fill at least half of a pooled buffer use one, so a peer sending many small frames
+ * cannot pin a buffer per frame.
+ */
+public class FrameReader {
+    private final InputStream inputStream;
+    private final int maxFrameSize;
+    private final byte[] header = new byte[9];
+    private final BufferPool pool;
+
+    /**
+     * @param maxFrameSize the SETTINGS_MAX_FRAME_SIZE advertised to the peer
+     * @param poolSize the maximum number of DATA buffers retained for reuse
+     */
+    public FrameReader(InputStream inputStream, int maxFrameSize, int poolSize) {
+        this.inputStream = inputStream;
+        this.maxFrameSize = maxFrameSize;
+        this.pool = new BufferPool(maxFrameSize, poolSize);
+    }
+
+    public BaseFrame read() throws Exception {
+        readFully(header, header.length);
+        FrameHeader frameHeader = FrameHeader.Parse(header);
+
+        int length = frameHeader.getLength();
+        if (length > maxFrameSize) {
+            throw new HTTP2Exception(HTTP2ErrorCode.FRAME_SIZE_ERROR);
+        }
+
+        if (frameHeader.getType() == FrameType.DATA) {
+            boolean pooled = length >= pool.bufferSize() / 2;
+            byte[] body = pooled ? pool.acquire() : new byte[length];
+            readFully(body, length);
+            return DataFrame.parse(body, length, frameHeader, pooled ? pool : null);
+        }
+
+        byte[] body = new byte[length];
+        readFully(body, length);
+        return FrameSerializer.parse(body, frameHeader);
+    }
+
+    /** the number of DATA buffers available for reuse */
+    public int pooledBuffers() {
+        return pool.available();
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int n = inputStream.read(buffer, offset, length - offset);
+            if (n == -1) {
+                break;
+            }
+            offset += n;
+        }
+        if (offset == 0 && length > 0) {
+            throw new EOFException("end of stream detected");
+        }
+        if (offset < length) {
+            throw new IOException("failed to read the full buffer");
+        }
+    }
+}
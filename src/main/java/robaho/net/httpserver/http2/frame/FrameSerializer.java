@@ -11,8 +11,6 @@ public class FrameSerializer {
 
 	public static BaseFrame deserialize(InputStream inputStream) throws Exception {
 
-		BaseFrame baseFrame;
-
 		byte[] tmpBuffer = new byte[9];
         HTTP2Connection.readFully(inputStream, tmpBuffer);
 		FrameHeader frameHeader = FrameHeader.Parse(tmpBuffer);
@@ -24,6 +22,13 @@ public class FrameSerializer {
         byte[] body = new byte[frameHeader.getLength()];
         HTTP2Connection.readFully(inputStream, body);
 
+        return parse(body, frameHeader);
+    }
+
+    static BaseFrame parse(byte[] body, FrameHeader frameHeader) throws Exception {
+
+		BaseFrame baseFrame;
+
 		switch (frameHeader.getType()) {
 		case HEADERS:
 			baseFrame = HeadersFrame.parse(body, frameHeader);
@@ -32,7 +37,7 @@ public class FrameSerializer {
 			baseFrame = ContinuationFrame.parse(body,frameHeader);
 			break;
 		case DATA:
-			baseFrame = DataFrame.parse(body,frameHeader);
+			baseFrame = DataFrame.parse(body,body.length,frameHeader,null);
 			break;
 		case GOAWAY:
 			baseFrame = GoawayFrame.parse(body,frameHeader);
@@ -43,6 +48,9 @@ public class FrameSerializer {
 		case PRIORITY:
 			baseFrame = PriorityFrame.parse(body,frameHeader);
 			break;
+		case PRIORITY_UPDATE:
+			baseFrame = PriorityUpdateFrame.parse(body,frameHeader);
+			break;
 		case PUSH_PROMISE:
 			baseFrame = PushPromiseFrame.parse(body,frameHeader);
 			break;
@@ -12,7 +12,7 @@ public enum FrameType {
     DATA((byte) 0x0), HEADERS((byte) 0x1), PRIORITY((byte) 0x2), RST_STREAM((byte) 0x3), 
         SETTINGS((byte) 0x4), PUSH_PROMISE((byte) 0x5), PING((byte) 0x6), 
         GOAWAY((byte) 0x7), WINDOW_UPDATE((byte) 0x8), CONTINUATION((byte) 0x9),
-        NOT_IMPLEMENTED((byte) 0xA);
+        NOT_IMPLEMENTED((byte) 0xA), PRIORITY_UPDATE((byte) 0x10);
 
 	final byte value;
 
@@ -27,6 +27,9 @@ public enum FrameType {
 	}
 
 	public static FrameType getEnum(int value) {
+        if(value == 0x10) {
+            return PRIORITY_UPDATE;
+        }
         if(value < 0 || value > 0x9) {
             return NOT_IMPLEMENTED;
         }
@@ -21,6 +21,10 @@ public class PingFrame extends BaseFrame {
         super(new FrameHeader(8,FrameType.PING,FrameFlag.NONE,0));
         body = new byte[8];
     }
+    public PingFrame(byte[] body) {
+        super(new FrameHeader(8,FrameType.PING,FrameFlag.NONE,0));
+        this.body = body;
+    }
     public PingFrame(PingFrame toBeAcked) {
         super(new FrameHeader(toBeAcked.body.length,FrameType.PING,FlagSet.of(FrameFlag.ACK),0));
         body = toBeAcked.body;
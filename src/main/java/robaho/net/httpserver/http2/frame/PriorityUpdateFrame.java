@@ -0,0 +1,45 @@
+package robaho.net.httpserver.http2.frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import robaho.net.httpserver.http2.HTTP2ErrorCode;
+import robaho.net.httpserver.http2.HTTP2Exception;
+import robaho.net.httpserver.http2.Utils;
+
+/**
+ * [rfc9218: Section 7.1] changes the priority of a stream, the field value uses the syntax of the priority header
+ */
+public class PriorityUpdateFrame extends BaseFrame {
+    public final int prioritizedStreamId;
+    public final String priorityFieldValue;
+
+    public PriorityUpdateFrame(FrameHeader header, int prioritizedStreamId, String priorityFieldValue) {
+        super(header);
+        this.prioritizedStreamId = prioritizedStreamId;
+        this.priorityFieldValue = priorityFieldValue;
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        byte[] value = priorityFieldValue.getBytes(StandardCharsets.US_ASCII);
+        FrameHeader.writeTo(os, 4 + value.length, FrameType.PRIORITY_UPDATE, FrameFlag.NONE, 0);
+        Utils.writeBinary(os, prioritizedStreamId);
+        os.write(value);
+    }
+
+    static BaseFrame parse(byte[] body, FrameHeader frameHeader) throws Exception {
+        if (frameHeader.getStreamIdentifier() != 0) {
+            throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "PRIORITY_UPDATE frame received on stream " + frameHeader.getStreamIdentifier());
+        }
+        if (body.length < 4) {
+            throw new HTTP2Exception(HTTP2ErrorCode.FRAME_SIZE_ERROR);
+        }
+        int prioritizedStreamId = Utils.convertToInt(body, 0) & 0x7FFFFFFF;
+        if (prioritizedStreamId == 0) {
+            throw new HTTP2Exception(HTTP2ErrorCode.PROTOCOL_ERROR, "PRIORITY_UPDATE frame for stream 0");
+        }
+        return new PriorityUpdateFrame(frameHeader, prioritizedStreamId, new String(body, 4, body.length - 4, StandardCharsets.US_ASCII));
+    }
+}
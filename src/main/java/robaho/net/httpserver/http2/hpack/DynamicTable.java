@@ -0,0 +1,122 @@
+package robaho.net.httpserver.http2.hpack;
+
+/**
+ * the HPACK decoder dynamic table. The entries are held in a circular buffer and indexed newest first, with the size
+ * accounted in octets as defined by RFC 7541 section 4.1. The oldest entries are evicted when the size would
+ * exceed the maximum.
+ */
+class DynamicTable {
+    private static final int ENTRY_OVERHEAD = 32;
+    // the size the peer may use until it acknowledges the advertised setting
+    private static final int INITIAL_SIZE = 4096;
+
+    private final int limit;
+    private HTTP2HeaderField[] entries;
+    // position of the oldest entry
+    private int head;
+    private int count;
+    private int size;
+    private int maxSize;
+
+    /**
+     * @param limit the maximum size advertised in SETTINGS_HEADER_TABLE_SIZE. The table starts at the protocol
+     * default size, and the peer must send a size update to use a different size.
+     */
+    DynamicTable(int limit) {
+        this.limit = limit;
+        this.maxSize = INITIAL_SIZE;
+        this.entries = new HTTP2HeaderField[16];
+    }
+
+    static int sizeOf(HTTP2HeaderField field) {
+        return field.name.length() + field.value.length() + ENTRY_OVERHEAD;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int length() {
+        return count;
+    }
+
+    /**
+     * @param index the 1 based index into the table, 1 is the newest entry
+     * @return the entry or null if the index is not in the table
+     */
+    HTTP2HeaderField get(int index) {
+        if (index < 1 || index > count) {
+            return null;
+        }
+        return entries[(head + count - index) % entries.length];
+    }
+
+    /**
+     * add the field as the newest entry, evicting the oldest entries as needed. A field larger than the maximum
+     * size empties the table and is not added.
+     */
+    void add(HTTP2HeaderField field) {
+        int fieldSize = sizeOf(field);
+        if (fieldSize > maxSize) {
+            evict(maxSize);
+            return;
+        }
+        evict(maxSize - fieldSize);
+        if (count == entries.length) {
+            grow();
+        }
+        entries[(head + count) % entries.length] = field;
+        count++;
+        size += fieldSize;
+    }
+
+    /**
+     * apply a dynamic table size update
+     * @throws IllegalArgumentException if the size exceeds the advertised limit
+     */
+    void setMaxSize(int maxSize) {
+        if (maxSize < 0 || maxSize > limit) {
+            throw new IllegalArgumentException("dynamic table size " + maxSize + " exceeds limit " + limit);
+        }
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    /** evict the oldest entries until the size is no greater than the target */
+    private void evict(int target) {
+        while (size > target) {
+            HTTP2HeaderField field = entries[head];
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            count--;
+            size -= sizeOf(field);
+        }
+    }
+
+    private void grow() {
+        HTTP2HeaderField[] grown = new HTTP2HeaderField[entries.length * 2];
+        for (int i = 0; i < count; i++) {
+            grown[i] = entries[(head + i) % entries.length];
+        }
+        entries = grown;
+        head = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) sb.append(", ");
+            sb.append(get(i));
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,298 @@
+package robaho.net.httpserver.http2.hpack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+
+import robaho.net.httpserver.http2.HTTP2Stats;
+import robaho.net.httpserver.http2.Utils;
+import robaho.net.httpserver.http2.frame.FrameFlag;
+import robaho.net.httpserver.http2.frame.FrameFlag.FlagSet;
+import robaho.net.httpserver.http2.frame.FrameHeader;
+import robaho.net.httpserver.http2.frame.FrameType;
+
+/**
+ * per connection HPACK encoder for response headers. Fields are indexed from the static table by name and value,
+ * and repeated fields are added to an encoder side dynamic table bounded by the peer's SETTINGS_HEADER_TABLE_SIZE.
+ * <p>
+ * The header blocks must be written in the order they are encoded, so callers that queue the frames must hold the
+ * encoder monitor until the frame is queued.
+ */
+public class HPackEncoder {
+    /** the maximum dynamic table size used by the encoder, regardless of what the peer allows */
+    public static final int DEFAULT_TABLE_SIZE = 4096;
+
+    private static final FlagSet END_OF_HEADERS = FlagSet.of(FrameFlag.END_HEADERS);
+    private static final FlagSet END_OF_HEADERS_AND_STREAM = FlagSet.of(FrameFlag.END_HEADERS,FrameFlag.END_STREAM);
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int PROMISED_STREAM_ID_LENGTH = 4;
+    // space reserved for the frame header, and the promised stream id of a PUSH_PROMISE
+    private static final byte[] RESERVED = new byte[FRAME_HEADER_LENGTH + PROMISED_STREAM_ID_LENGTH];
+    /** the request pseudo headers of a PUSH_PROMISE, which must precede the regular headers */
+    private static final List<String> REQUEST_PSEUDO_HEADERS = List.of(":method", ":scheme", ":authority", ":path");
+
+    // static table lookup by the normalized (Headers) name, entries with the same name are contiguous
+    private static final Map<String,Integer> STATIC_NAMES = new HashMap<>();
+    static {
+        for (int i = 61; i > 0; i--) {
+            STATIC_NAMES.put(RFC7541Parser.getHeaderField(i).normalizedName, i);
+        }
+    }
+
+    /** fields with these names are frequently unique so they are not added to the dynamic table */
+    private static final List<String> NOT_INDEXED = List.of("Content-length", "Etag", "Last-modified", "Location");
+    /** fields with these names are never indexed by any intermediary */
+    private static final List<String> NEVER_INDEXED = List.of("Set-cookie", "Authorization", "Proxy-authorization");
+
+    private static final class Entry {
+        final String name;
+        final String value;
+        final int size;
+        final long sequence;
+
+        Entry(String name, String value, long sequence) {
+            this.name = name;
+            this.value = value;
+            this.size = name.length() + value.length() + 32;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class NameEntries {
+        final Map<String,Entry> values = new HashMap<>();
+        Entry latest;
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Map<String,NameEntries> names = new HashMap<>();
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream(256);
+    private final HTTP2Stats stats;
+    private final boolean huffman;
+
+    private long inserted;
+    private int tableSize;
+    private int maxTableSize = DEFAULT_TABLE_SIZE;
+
+    // table size changes requested by the peer that have not been signaled yet, -1 if none
+    private volatile int pendingMinTableSize = -1;
+    private volatile int pendingTableSize = -1;
+
+    public HPackEncoder(HTTP2Stats stats,boolean huffman) {
+        this.stats = stats;
+        this.huffman = huffman;
+    }
+
+    /**
+     * called when the peer sends SETTINGS_HEADER_TABLE_SIZE. The change is signaled at the start of the next header block.
+     */
+    public synchronized void setMaxTableSize(long peerTableSize) {
+        int size = (int)Math.min(peerTableSize, DEFAULT_TABLE_SIZE);
+        if (pendingMinTableSize == -1 || size < pendingMinTableSize) {
+            pendingMinTableSize = size;
+        }
+        pendingTableSize = size;
+    }
+
+    /**
+     * this method is optimized for a server implementation and is not suitable for generic http2 hpack header encoding
+     * @return the complete HEADERS frame
+     */
+    public synchronized byte[] encodeHeaderFrame(Headers headers, int streamId, boolean closeStream) {
+        begin(0);
+
+        // ':status' is required and the only allowed outbound pseudo headers
+        String status = headers.getFirst(":status");
+        encodeField(":status", status);
+        long raw = 7 + status.length();
+        raw += encodeRegularFields(headers);
+
+        return finish(raw, FrameType.HEADERS, closeStream ? END_OF_HEADERS_AND_STREAM : END_OF_HEADERS, streamId, 0);
+    }
+
+    /**
+     * @param headers the promised request headers, which must contain the request pseudo headers
+     * @return the complete PUSH_PROMISE frame
+     */
+    public synchronized byte[] encodePushPromiseFrame(Headers headers, int streamId, int promisedStreamId) {
+        begin(PROMISED_STREAM_ID_LENGTH);
+
+        long raw = 0;
+        for (String name : REQUEST_PSEUDO_HEADERS) {
+            String value = headers.getFirst(name);
+            encodeField(name, value);
+            raw += name.length() + value.length();
+        }
+        raw += encodeRegularFields(headers);
+
+        byte[] frame = finish(raw, FrameType.PUSH_PROMISE, END_OF_HEADERS, streamId, PROMISED_STREAM_ID_LENGTH);
+        Utils.convertToBinary(frame, FRAME_HEADER_LENGTH, promisedStreamId);
+        return frame;
+    }
+
+    /** @param prefixLength the length of the frame fields that precede the header block */
+    private void begin(int prefixLength) {
+        fields.reset();
+        fields.write(RESERVED, 0, FRAME_HEADER_LENGTH + prefixLength);
+        if (pendingTableSize != -1) {
+            writeTableSizeUpdates();
+        }
+    }
+
+    /** @return the raw size of the encoded fields */
+    private long encodeRegularFields(Headers headers) {
+        long raw = 0;
+        for (Map.Entry<String,List<String>> e : headers.entrySet()) {
+            String name = e.getKey();
+            if (name.startsWith(":")) {
+                continue;
+            }
+            for (String value : e.getValue()) {
+                encodeField(name, value);
+                raw += name.length() + value.length();
+            }
+        }
+        return raw;
+    }
+
+    private byte[] finish(long raw, FrameType type, FlagSet flags, int streamId, int prefixLength) {
+        int length = fields.size() - FRAME_HEADER_LENGTH;
+        stats.headerBytesRaw.addAndGet(raw);
+        stats.headerBytesEncoded.addAndGet(length - prefixLength);
+
+        byte[] frame = fields.toByteArray();
+        byte[] header = FrameHeader.encode(length, type, flags, streamId);
+        System.arraycopy(header, 0, frame, 0, header.length);
+        return frame;
+    }
+
+    private void writeTableSizeUpdates() {
+        int min = pendingMinTableSize;
+        int size = pendingTableSize;
+        pendingMinTableSize = -1;
+        pendingTableSize = -1;
+        if (min < maxTableSize) {
+            resize(min);
+            encodeInteger(0x20, min, 5);
+        }
+        if (size != maxTableSize) {
+            resize(size);
+            encodeInteger(0x20, size, 5);
+        }
+    }
+
+    private void resize(int size) {
+        maxTableSize = size;
+        evict(0);
+    }
+
+    private void encodeField(String name, String value) {
+        Integer staticIndex = STATIC_NAMES.get(name);
+        if (staticIndex != null) {
+            for (int i = staticIndex; i <= 61; i++) {
+                HTTP2HeaderField field = RFC7541Parser.getHeaderField(i);
+                if (!name.equals(field.normalizedName)) {
+                    break;
+                }
+                if (value.equals(field.value)) {
+                    encodeInteger(0x80, i, 7);
+                    return;
+                }
+            }
+        }
+
+        NameEntries dynamic = names.get(name);
+        if (dynamic != null) {
+            Entry entry = dynamic.values.get(value);
+            if (entry != null) {
+                encodeInteger(0x80, dynamicIndex(entry), 7);
+                return;
+            }
+        }
+
+        int nameIndex = staticIndex != null ? staticIndex : dynamic != null ? dynamicIndex(dynamic.latest) : 0;
+
+        if (NEVER_INDEXED.contains(name)) {
+            encodeLiteral(0x10, 4, nameIndex, name, value);
+        } else if (NOT_INDEXED.contains(name) || name.length() + value.length() + 32 > maxTableSize) {
+            encodeLiteral(0x00, 4, nameIndex, name, value);
+        } else {
+            encodeLiteral(0x40, 6, nameIndex, name, value);
+            add(name, value);
+        }
+    }
+
+    private void encodeLiteral(int representation, int prefixBits, int nameIndex, String name, String value) {
+        encodeInteger(representation, nameIndex, prefixBits);
+        if (nameIndex == 0) {
+            // Headers keys are normalized to the first letter in uppercase, http2 keys are all lowercase
+            encodeString(Character.toLowerCase(name.charAt(0)) + name.substring(1));
+        }
+        encodeString(value);
+    }
+
+    private int dynamicIndex(Entry entry) {
+        return 62 + (int)(inserted - 1 - entry.sequence);
+    }
+
+    private void add(String name, String value) {
+        Entry entry = new Entry(name, value, inserted++);
+        evict(entry.size);
+        entries.addLast(entry);
+        tableSize += entry.size;
+        NameEntries dynamic = names.computeIfAbsent(name, k -> new NameEntries());
+        dynamic.values.put(value, entry);
+        dynamic.latest = entry;
+    }
+
+    /** evict the oldest entries until there is room for the additional bytes */
+    private void evict(int additional) {
+        while (!entries.isEmpty() && tableSize + additional > maxTableSize) {
+            Entry entry = entries.removeFirst();
+            tableSize -= entry.size;
+            NameEntries dynamic = names.get(entry.name);
+            dynamic.values.remove(entry.value, entry);
+            if (dynamic.latest == entry) {
+                names.remove(entry.name);
+            }
+        }
+    }
+
+    private void encodeString(String value) {
+        if (huffman) {
+            int length = Huffman.encodedLength(value);
+            if (length < value.length()) {
+                encodeInteger(0x80, length, 7);
+                try {
+                    Huffman.encode(value, fields);
+                } catch (IOException ex) {
+                    // not possible with a ByteArrayOutputStream
+                }
+                return;
+            }
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        encodeInteger(0x00, bytes.length, 7);
+        fields.write(bytes, 0, bytes.length);
+    }
+
+    private void encodeInteger(int representation, int value, int prefixBits) {
+        int mask = (1 << prefixBits) - 1;
+        if (value < mask) {
+            fields.write(representation | value);
+            return;
+        }
+        fields.write(representation | mask);
+        value -= mask;
+        while (value >= 128) {
+            fields.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        fields.write(value);
+    }
+}
@@ -1,233 +1,211 @@
 package robaho.net.httpserver.http2.hpack;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URISyntaxException;
-import java.util.Arrays;
+import java.io.OutputStream;
 
 import robaho.net.httpserver.http2.HTTP2ErrorCode;
 import robaho.net.httpserver.http2.HTTP2Exception;
 
+/**
+ * HPACK huffman coding (RFC 7541 Appendix B). Decoding uses a state machine that consumes
+ * a nibble at a time, the states are the internal nodes of the code tree.
+ */
 public class Huffman {
-    private static class HuffmanSequence implements Comparable<HuffmanSequence> {
-        private final char[] buffer;
-        private final int length;
-        private final int hash;
-        HuffmanSequence(char[] buffer, int length) {
-            this.buffer = buffer;
-            this.length = length;
-            this.hash = calculateHash();
-        }
-        HuffmanSequence(char[] buffer) {
-            this(buffer, buffer.length);
-        }
-        private int calculateHash() {
-            int hash = 0;
-            for (int i = 0; i < length; i++) {
-                hash = 31 * hash + (buffer[i] == '1' ? 1 : 0);
-            }
-            return hash;
-        }
-        @Override
-        public int hashCode() {
-            return hash;
-        }
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof HuffmanSequence other)) {
-                return false;
-            }
-            if (hash != other.hash) {
-                return false;
+    private static final int EOS = 256;
+
+    /** the code for each symbol, right aligned */
+    private static final int[] CODES = {
+        0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+        0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+        0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+        0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+        0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+        0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+        0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+        0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+        0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+        0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+        0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+        0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+        0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+        0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+        0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+        0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+        0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+        0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+        0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+        0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+        0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+        0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+        0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+        0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+        0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+        0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+        0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+        0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+        0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+        0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+        0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+        0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee,
+        0x3fffffff
+    };
+    /** the bit length of the code for each symbol */
+    private static final byte[] LENGTHS = {
+        13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+        28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+        6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+        5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+        13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+        7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+        15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+        6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+        20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+        24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+        22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+        21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+        26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+        19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+        20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+        26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+        30
+    };
+
+    private static final int STATES = 256;
+
+    // flags of a decoding transition
+    private static final int EMIT = 1;
+    private static final int ACCEPT = 2;
+    private static final int FAIL = 4;
+
+    // indexed by state * 16 + nibble
+    private static final short[] NEXT_STATE = new short[STATES * 16];
+    private static final char[] SYMBOL = new char[STATES * 16];
+    private static final byte[] FLAGS = new byte[STATES * 16];
+
+    static {
+        // build the code tree, a child >= 0 is an internal node, and < 0 is the leaf -(symbol+1)
+        int[][] children = new int[STATES][2];
+        int nodes = 1;
+        for (int symbol = 0; symbol <= EOS; symbol++) {
+            int node = 0;
+            for (int bit = LENGTHS[symbol] - 1; bit >= 0; bit--) {
+                int b = (CODES[symbol] >>> bit) & 1;
+                if (bit == 0) {
+                    children[node][b] = -(symbol + 1);
+                } else {
+                    if (children[node][b] == 0) {
+                        children[node][b] = nodes++;
+                    }
+                    node = children[node][b];
+                }
             }
-            return compareTo(other) == 0;
-        }
-        @Override
-        public String toString() {
-            return new String(buffer, 0, length);
         }
-        @Override
-        public int compareTo(HuffmanSequence o) {
-            if (length != o.length) {
-                return length - o.length;
-            }
-            for (int i = 0; i < length; i++) {
-                if (buffer[i] != o.buffer[i]) {
-                    return buffer[i] - o.buffer[i];
+        // a decode may end in a state that is reached by at most 7 one bits from the root, since that is a prefix of EOS
+        boolean[] padding = new boolean[STATES];
+        padding[0] = true;
+        for (int depth = 0, node = 0; depth < 7; depth++) {
+            node = children[node][1];
+            padding[node] = true;
+        }
+        for (int state = 0; state < STATES; state++) {
+            for (int nibble = 0; nibble < 16; nibble++) {
+                int i = state * 16 + nibble;
+                int node = state;
+                int flags = 0;
+                for (int bit = 3; bit >= 0; bit--) {
+                    int child = children[node][(nibble >>> bit) & 1];
+                    if (child < 0) {
+                        int symbol = -child - 1;
+                        if (symbol == EOS) {
+                            flags = FAIL;
+                            break;
+                        }
+                        SYMBOL[i] = (char) symbol;
+                        flags |= EMIT;
+                        node = 0;
+                    } else {
+                        node = child;
+                    }
                 }
+                if ((flags & FAIL) == 0 && padding[node]) {
+                    flags |= ACCEPT;
+                }
+                NEXT_STATE[i] = (short) node;
+                FLAGS[i] = (byte) flags;
             }
-            return 0;
         }
     }
-    private static class HuffmanCode {
-        private final HuffmanSequence sequence;
-        private final int value;
-        HuffmanCode(HuffmanSequence sequence, int value) {
-            this.sequence = sequence;
-            this.value = value;
-        }
+
+    public static String decode(byte[] value) throws HTTP2Exception {
+        return decode(value, 0, value.length);
     }
+
     /**
-     * a skip list of huffman codes
+     * decode the huffman encoded bytes as ISO-8859-1 characters
+     * @throws HTTP2Exception if the value contains EOS or has invalid padding
      */
-    private static class HuffmanCodes {
-        private final HuffmanCode[] codes;
-        /** 
-         * holds the offset into the array for the start of codes by the code length, or -1 if there
-         * are no codes of that length
-         */
-        private final int[] offsets = new int[33];
-
-        HuffmanCodes(HuffmanCode[] codes) {
-            this.codes = codes;
-            Arrays.sort(codes, (a, b) -> a.sequence.compareTo(b.sequence));
-            Arrays.fill(offsets,-1);
-            for (int i = 0; i < codes.length; i++) {
-                HuffmanSequence sequence = codes[i].sequence;
-                int length = sequence.length;
-                if (length <= 32 && offsets[length] == -1) {
-                    offsets[length] = i;
-                }               
-            }
-        }
-        /** @return the matched character value or null if no match */
-        Integer get(HuffmanSequence sequence) {
-            int index = offsets[sequence.length];
-            if (index == -1) {
-                return null;
+    public static String decode(byte[] value, int offset, int length) throws HTTP2Exception {
+        // the shortest code is 5 bits
+        char[] result = new char[length * 8 / 5 + 1];
+        int n = 0;
+        int state = 0;
+        int flags = ACCEPT;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int b = value[i] & 0xFF;
+            int t = state * 16 + (b >>> 4);
+            flags = FLAGS[t];
+            if ((flags & FAIL) != 0) {
+                throw new HTTP2Exception(HTTP2ErrorCode.COMPRESSION_ERROR, "decoded contains EOS");
             }
-            while(index+8 < codes.length && codes[index+8].sequence.compareTo(sequence)<0) {
-                index+=8;
+            if ((flags & EMIT) != 0) {
+                result[n++] = SYMBOL[t];
             }
-            while(index+4 < codes.length && codes[index+4].sequence.compareTo(sequence)<0) {
-                index+=4;
+            t = NEXT_STATE[t] * 16 + (b & 0x0F);
+            flags = FLAGS[t];
+            if ((flags & FAIL) != 0) {
+                throw new HTTP2Exception(HTTP2ErrorCode.COMPRESSION_ERROR, "decoded contains EOS");
             }
-            int result=0;
-            while(index < codes.length && (result = codes[index].sequence.compareTo(sequence))<0) {
-                index++;
-            }
-            if(index < codes.length && result==0) {
-                return codes[index].value;
-            } else {
-                return null;
+            if ((flags & EMIT) != 0) {
+                result[n++] = SYMBOL[t];
             }
+            state = NEXT_STATE[t];
         }
-    }
-
-	private static HuffmanCodes huffmanCodes;
-	private static HuffmanCodes getHuffmanCodes()
-			throws FileNotFoundException, IOException, URISyntaxException {
-		if (huffmanCodes == null) {
-            HuffmanCode[] codes = new HuffmanCode[257];
-
-			ClassLoader classloader = Thread.currentThread().getContextClassLoader();
-			InputStream is = classloader.getResourceAsStream("huffman_codes_rfc7541.txt");
-
-			try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-				String line;
-				String code;
-				int value = 0;
-				while ((line = br.readLine()) != null) {
-					code = line.substring(11, line.indexOf(' ', 11));
-					code = code.replace("|", "");
-					codes[value] = new HuffmanCode(new HuffmanSequence(code.toCharArray()), value);
-					value++;
-				}
-			}
-			huffmanCodes = new HuffmanCodes(codes);
-		}
-
-		return huffmanCodes;
-	}
-
-	public static String decode(byte[] value) throws HTTP2Exception {
-		StringBuilder result = new StringBuilder();
-
-		HuffmanCodes codes;
-            try {
-                codes = getHuffmanCodes();
-            } catch (IOException ex) {
-                throw new HTTP2Exception("Error reading huffman codes", ex);
-            } catch (URISyntaxException ex) {
-                throw new HTTP2Exception("Error reading huffman codes", ex);
-            }
-
-        CodeBuffer code = new CodeBuffer();
-
-		for (int i = 0; i < value.length; i++) {
-			int unsignedByte = value[i] & 0xff;
-			for (int j = 0; j < 8; j++) {
-				if ((unsignedByte & 0x00000080) != 0) {
-					code.append('1');
-				} else {
-					code.append('0');
-				}
-
-				unsignedByte = unsignedByte << 1;
-
-                var intValue = codes.get(code.sequence());
-                if(intValue!=null) {
-                    if(intValue==256) {
-            			throw new HTTP2Exception(HTTP2ErrorCode.COMPRESSION_ERROR,"decoded contains EOS "+code);
-                    }
-                    result.append((char)(intValue & 0xFF));
-                    code.reset();
-                }
-			}
-		}
-
-		// Check for EOS (End of Stream) condition
-		if (code.length() > 7 || code.indexOf('0')>=0) {
-			throw new HTTP2Exception(HTTP2ErrorCode.COMPRESSION_ERROR,"decoded has incorrect padding "+code);
-        }
-
-		return result.toString();
-	}
-    private static class CodeBuffer {
-        private char[] buffer = new char[32];
-        private int length;
-
-        void append(char ch) {
-            if (length >= buffer.length) {
-                char[] newBuffer = new char[buffer.length * 2];
-                System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
-                buffer = newBuffer;
-            }
-            buffer[length++] = ch;
-        }
-
-        void reset() {
-            length = 0;
+        if ((flags & ACCEPT) == 0) {
+            throw new HTTP2Exception(HTTP2ErrorCode.COMPRESSION_ERROR, "decoded has incorrect padding");
         }
+        return new String(result, 0, n);
+    }
 
-        int length() {
-            return length;
+    /**
+     * @return the number of bytes needed to huffman encode the ISO-8859-1 characters of the value
+     */
+    public static int encodedLength(String value) {
+        long bits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            bits += LENGTHS[value.charAt(i) & 0xFF];
         }
+        return (int) ((bits + 7) >> 3);
+    }
 
-        int indexOf(char c) {
-            for (int i = 0; i < length; i++) {
-                if (buffer[i] == c) {
-                    return i;
-                }
+    /**
+     * huffman encode the ISO-8859-1 characters of the value, padding the last byte with the EOS prefix
+     */
+    public static void encode(String value, OutputStream os) throws IOException {
+        long current = 0;
+        int n = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int c = value.charAt(i) & 0xFF;
+            int length = LENGTHS[c];
+            current = (current << length) | CODES[c];
+            n += length;
+            while (n >= 8) {
+                n -= 8;
+                os.write((int) (current >> n));
             }
-            return -1;
         }
-
-        HuffmanSequence sequence() {
-            return new HuffmanSequence(buffer, length);
-        }
-
-        @Override
-        public String toString() {
-            return new String(buffer, 0, length);
+        if (n > 0) {
+            current = (current << (8 - n)) | (0xFF >>> n);
+            os.write((int) current);
         }
     }
-
-
-
-
-
 }
@@ -0,0 +1,97 @@
+package robaho.net.httpserver.http2.hpack;
+
+import java.util.Arrays;
+
+import robaho.net.httpserver.OpenAddressMap;
+
+/**
+ * the RFC 7541 static table
+ */
+class RFC7541Parser {
+
+    private static final HTTP2HeaderField[] STATIC_HEADER_TABLE = new HTTP2HeaderField[62];
+    static {
+        STATIC_HEADER_TABLE[1] = new HTTP2HeaderField(":authority", null);
+        STATIC_HEADER_TABLE[2] = new HTTP2HeaderField(":method", "GET");
+        STATIC_HEADER_TABLE[3] = new HTTP2HeaderField(":method", "POST");
+        STATIC_HEADER_TABLE[4] = new HTTP2HeaderField(":path", "/");
+        STATIC_HEADER_TABLE[5] = new HTTP2HeaderField(":path", "/index.html");
+        STATIC_HEADER_TABLE[6] = new HTTP2HeaderField(":scheme", "http");
+        STATIC_HEADER_TABLE[7] = new HTTP2HeaderField(":scheme", "https");
+        STATIC_HEADER_TABLE[8] = new HTTP2HeaderField(":status", "200");
+        STATIC_HEADER_TABLE[9] = new HTTP2HeaderField(":status", "204");
+        STATIC_HEADER_TABLE[10] = new HTTP2HeaderField(":status", "206");
+        STATIC_HEADER_TABLE[11] = new HTTP2HeaderField(":status", "304");
+        STATIC_HEADER_TABLE[12] = new HTTP2HeaderField(":status", "400");
+        STATIC_HEADER_TABLE[13] = new HTTP2HeaderField(":status", "404");
+        STATIC_HEADER_TABLE[14] = new HTTP2HeaderField(":status", "500");
+        STATIC_HEADER_TABLE[15] = new HTTP2HeaderField("accept-charset", null);
+        STATIC_HEADER_TABLE[16] = new HTTP2HeaderField("accept-encoding", "gzip, deflate");
+        STATIC_HEADER_TABLE[17] = new HTTP2HeaderField("accept-language", null);
+        STATIC_HEADER_TABLE[18] = new HTTP2HeaderField("accept-ranges", null);
+        STATIC_HEADER_TABLE[19] = new HTTP2HeaderField("accept", null);
+        STATIC_HEADER_TABLE[20] = new HTTP2HeaderField("access-control-allow-origin", null);
+        STATIC_HEADER_TABLE[21] = new HTTP2HeaderField("age", null);
+        STATIC_HEADER_TABLE[22] = new HTTP2HeaderField("allow", null);
+        STATIC_HEADER_TABLE[23] = new HTTP2HeaderField("authorization", null);
+        STATIC_HEADER_TABLE[24] = new HTTP2HeaderField("cache-control", null);
+        STATIC_HEADER_TABLE[25] = new HTTP2HeaderField("content-disposition", null);
+        STATIC_HEADER_TABLE[26] = new HTTP2HeaderField("content-encoding", null);
+        STATIC_HEADER_TABLE[27] = new HTTP2HeaderField("content-language", null);
+        STATIC_HEADER_TABLE[28] = new HTTP2HeaderField("content-length", null);
+        STATIC_HEADER_TABLE[29] = new HTTP2HeaderField("content-location", null);
+        STATIC_HEADER_TABLE[30] = new HTTP2HeaderField("content-range", null);
+        STATIC_HEADER_TABLE[31] = new HTTP2HeaderField("content-type", null);
+        STATIC_HEADER_TABLE[32] = new HTTP2HeaderField("cookie", null);
+        STATIC_HEADER_TABLE[33] = new HTTP2HeaderField("date", null);
+        STATIC_HEADER_TABLE[34] = new HTTP2HeaderField("etag", null);
+        STATIC_HEADER_TABLE[35] = new HTTP2HeaderField("expect", null);
+        STATIC_HEADER_TABLE[36] = new HTTP2HeaderField("expires", null);
+        STATIC_HEADER_TABLE[37] = new HTTP2HeaderField("from", null);
+        STATIC_HEADER_TABLE[38] = new HTTP2HeaderField("host", null);
+        STATIC_HEADER_TABLE[39] = new HTTP2HeaderField("if-match", null);
+        STATIC_HEADER_TABLE[40] = new HTTP2HeaderField("if-modified-since", null);
+        STATIC_HEADER_TABLE[41] = new HTTP2HeaderField("if-none-match", null);
+        STATIC_HEADER_TABLE[42] = new HTTP2HeaderField("if-range", null);
+        STATIC_HEADER_TABLE[43] = new HTTP2HeaderField("if-unmodified-since", null);
+        STATIC_HEADER_TABLE[44] = new HTTP2HeaderField("last-modified", null);
+        STATIC_HEADER_TABLE[45] = new HTTP2HeaderField("link", null);
+        STATIC_HEADER_TABLE[46] = new HTTP2HeaderField("location", null);
+        STATIC_HEADER_TABLE[47] = new HTTP2HeaderField("max-forwards", null);
+        STATIC_HEADER_TABLE[48] = new HTTP2HeaderField("proxy-authenticate", null);
+        STATIC_HEADER_TABLE[49] = new HTTP2HeaderField("proxy-authorization", null);
+        STATIC_HEADER_TABLE[50] = new HTTP2HeaderField("range", null);
+        STATIC_HEADER_TABLE[51] = new HTTP2HeaderField("referer", null);
+        STATIC_HEADER_TABLE[52] = new HTTP2HeaderField("refresh", null);
+        STATIC_HEADER_TABLE[53] = new HTTP2HeaderField("retry-after", null);
+        STATIC_HEADER_TABLE[54] = new HTTP2HeaderField("server", null);
+        STATIC_HEADER_TABLE[55] = new HTTP2HeaderField("set-cookie", null);
+        STATIC_HEADER_TABLE[56] = new HTTP2HeaderField("strict-transport-security", null);
+        STATIC_HEADER_TABLE[57] = new HTTP2HeaderField("transfer-encoding", null);
+        STATIC_HEADER_TABLE[58] = new HTTP2HeaderField("user-agent", null);
+        STATIC_HEADER_TABLE[59] = new HTTP2HeaderField("vary", null);
+        STATIC_HEADER_TABLE[60] = new HTTP2HeaderField("via", null);
+        STATIC_HEADER_TABLE[61] = new HTTP2HeaderField("www-authenticate", null);
+    }
+
+    private static final OpenAddressMap<String, Integer> STATIC_HEADER_NAME_TO_INDEX = new OpenAddressMap<>(256);
+    static {
+        Arrays.stream(STATIC_HEADER_TABLE).filter(v -> v!=null).forEach(v -> STATIC_HEADER_NAME_TO_INDEX.put(v.name, Arrays.asList(STATIC_HEADER_TABLE).indexOf(v)));
+    }
+
+    public static Integer getIndex(String name) {
+        return STATIC_HEADER_NAME_TO_INDEX.get(name);
+    }
+
+    public static HTTP2HeaderField getHeaderField(int index) {
+        if (index < 1 || index >= STATIC_HEADER_TABLE.length) {
+            return null;
+        }
+        return STATIC_HEADER_TABLE[index];
+    }
+
+    public static String getHeaderFieldName(int index) {
+        var field = getHeaderField(index);
+        return field == null ? null : field.getName();
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures the memory cost of idle keep-alive connections, reported as connections per GB.
+ * <p>
+ * Each mode must be run in a separate JVM since the server configuration is read once:
+ * <pre>
+ * java IdleConnectionsBenchmark thread 10000
+ * java IdleConnectionsBenchmark selector 10000
+ * </pre>
+ * "thread" holds a (virtual) thread blocked reading each idle connection, "selector" parks
+ * idle connections on a shared selector using {@code robaho.net.httpserver.parkIdleConnections}.
+ * The client side sockets are in the same JVM, so their (small, constant) cost is included in
+ * both modes.
+ */
+public class IdleConnectionsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("usage: java IdleConnectionsBenchmark thread|selector connections");
+            System.exit(1);
+        }
+        boolean selector = args[0].equals("selector");
+        int connections = Integer.parseInt(args[1]);
+
+        System.setProperty("robaho.net.httpserver.parkIdleConnections", Boolean.toString(selector));
+        System.setProperty("robaho.net.httpserver.idleInterval", "3600");
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        server.createContext("/", exchange -> {
+            byte[] bytes = "ok".getBytes();
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (var os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        int port = server.getAddress().getPort();
+        byte[] request = ("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        long before = usedMemory();
+        List<Socket> sockets = new ArrayList<>(connections);
+        byte[] response = new byte[1024];
+        for (int i = 0; i < connections; i++) {
+            Socket s = new Socket(InetAddress.getLoopbackAddress(), port);
+            sockets.add(s);
+            // perform one request so the connection is a fully established keep-alive connection
+            OutputStream os = s.getOutputStream();
+            os.write(request);
+            os.flush();
+            readResponse(s.getInputStream(), response);
+        }
+        // allow the server side to settle into the idle state
+        Thread.sleep(2000);
+        long after = usedMemory();
+
+        long perConnection = Math.max(1, (after - before) / connections);
+        System.out.println("mode: " + (selector ? "selector" : "thread"));
+        System.out.println("connections: " + connections);
+        System.out.println("live threads: " + ManagementFactory.getThreadMXBean().getThreadCount());
+        System.out.println("bytes per connection: " + perConnection);
+        System.out.println("connections per GB: " + (1024L * 1024 * 1024) / perConnection);
+
+        for (Socket s : sockets) {
+            s.close();
+        }
+        server.stop(0);
+    }
+
+    private static void readResponse(InputStream is, byte[] buffer) throws IOException {
+        // response is small and fixed length, so wait for the body
+        int total = 0;
+        while (true) {
+            int n = is.read(buffer, total, buffer.length - total);
+            if (n == -1) {
+                throw new IOException("connection closed");
+            }
+            total += n;
+            String s = new String(buffer, 0, total, StandardCharsets.ISO_8859_1);
+            if (s.endsWith("\r\n\r\nok")) {
+                return;
+            }
+        }
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
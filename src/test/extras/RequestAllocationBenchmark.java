@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures the bytes allocated by the server per GET request with a typical browser set of headers.
+ * <pre>
+ * java RequestAllocationBenchmark [requests]
+ * </pre>
+ * Requests are pipelined on a single keep-alive connection, and the allocation of all threads is
+ * sampled (using com.sun.management.ThreadMXBean) before and after, so the client cost is included
+ * but is the same for every server version.
+ */
+public class RequestAllocationBenchmark {
+    private static final String REQUEST =
+            "GET /plaintext?id=1 HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Cache-Control: max-age=0\r\n" +
+            "sec-ch-ua: \"Chromium\";v=\"124\", \"Not-A.Brand\";v=\"99\"\r\n" +
+            "sec-ch-ua-mobile: ?0\r\n" +
+            "sec-ch-ua-platform: \"Linux\"\r\n" +
+            "Upgrade-Insecure-Requests: 1\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+            "Sec-Fetch-Site: none\r\n" +
+            "Sec-Fetch-Mode: navigate\r\n" +
+            "Sec-Fetch-User: ?1\r\n" +
+            "Sec-Fetch-Dest: document\r\n" +
+            "Accept-Encoding: gzip, deflate, br\r\n" +
+            "Accept-Language: en-US,en;q=0.9\r\n" +
+            "Cookie: session=abcdef0123456789\r\n" +
+            "\r\n";
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        // avoid Nagle/delayed ACK stalls on the pipelined responses
+        System.setProperty("robaho.net.httpserver.nodelay", "true");
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        byte[] body = "Hello, World!".getBytes();
+        server.createContext("/", exchange -> {
+            // a typical handler reads a few headers
+            exchange.getRequestHeaders().getFirst("Accept");
+            exchange.getRequestHeaders().getFirst("User-agent");
+            exchange.sendResponseHeaders(200, body.length);
+            try (var os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.getAddress().getPort())) {
+            s.setTcpNoDelay(true);
+            byte[] request = REQUEST.getBytes(StandardCharsets.ISO_8859_1);
+            // warmup
+            run(s, request, requests / 2);
+            long before = allocated();
+            run(s, request, requests);
+            long after = allocated();
+            System.out.println("requests: " + requests);
+            System.out.println("bytes allocated per request: " + (after - before) / requests);
+        }
+        server.stop(0);
+    }
+
+    private static void run(Socket s, byte[] request, int requests) throws IOException {
+        OutputStream os = s.getOutputStream();
+        InputStream is = s.getInputStream();
+        byte[] buffer = new byte[8192];
+        int batch = 16;
+        byte[] requestBatch = new byte[request.length * batch];
+        for (int j = 0; j < batch; j++) {
+            System.arraycopy(request, 0, requestBatch, j * request.length, request.length);
+        }
+        for (int i = 0; i < requests; i += batch) {
+            int n = Math.min(batch, requests - i);
+            os.write(requestBatch, 0, n * request.length);
+            os.flush();
+            readResponses(is, buffer, n);
+        }
+    }
+
+    private static void readResponses(InputStream is, byte[] buffer, int count) throws IOException {
+        // each response ends with the fixed body
+        byte[] end = "Hello, World!".getBytes();
+        int matched = 0;
+        while (count > 0) {
+            int n = is.read(buffer);
+            if (n == -1) {
+                throw new IOException("connection closed");
+            }
+            for (int i = 0; i < n; i++) {
+                matched = buffer[i] == end[matched] ? matched + 1 : (buffer[i] == end[0] ? 1 : 0);
+                if (matched == end.length) {
+                    count--;
+                    matched = 0;
+                }
+            }
+        }
+    }
+
+    private static long allocated() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = bean.getAllThreadIds();
+        return Arrays.stream(bean.getThreadAllocatedBytes(ids)).filter(b -> b > 0).sum();
+    }
+}
@@ -0,0 +1,95 @@
+package robaho.net.httpserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.expectThrows;
+import org.testng.annotations.Test;
+
+public class ContextListTest {
+    private static HttpContextImpl context(String protocol, String path) {
+        return new HttpContextImpl(protocol, path, null, null);
+    }
+
+    @Test
+    public void TestLongestPrefix() {
+        var list = new ContextList();
+        var root = context("http", "/");
+        var files = context("http", "/files");
+        var filesA = context("http", "/files/a");
+        var fox = context("http", "/fox");
+        var secure = context("https", "/files");
+        for (var ctx : List.of(root, files, filesA, fox, secure)) {
+            list.add(ctx);
+        }
+        assertEquals(list.size(), 5);
+
+        assertSame(list.findContext("http", "/"), root);
+        assertSame(list.findContext("http", "/f"), root);
+        assertSame(list.findContext("http", "/files"), files);
+        assertSame(list.findContext("http", "/filesystem"), files);
+        assertSame(list.findContext("http", "/files/b"), files);
+        assertSame(list.findContext("http", "/files/a/b"), filesA);
+        assertSame(list.findContext("http", "/foxes"), fox);
+        assertSame(list.findContext("HTTPS", "/files/a"), secure);
+        assertNull(list.findContext("https", "/other"));
+
+        assertSame(list.findContext("http", "/files", true), files);
+        assertNull(list.findContext("http", "/files/b", true));
+        assertNull(list.findContext("http", "/fi", true));
+
+        expectThrows(IllegalArgumentException.class, () -> list.add(context("http", "/files")));
+
+        list.remove("http", "/files");
+        assertSame(list.findContext("http", "/files/b"), root);
+        assertSame(list.findContext("http", "/files/a/b"), filesA);
+        list.remove(fox);
+        assertSame(list.findContext("http", "/fox"), root);
+        assertEquals(list.size(), 3);
+
+        expectThrows(IllegalArgumentException.class, () -> list.remove("http", "/files"));
+        expectThrows(IllegalArgumentException.class, () -> list.remove(context("http", "/files/a")));
+    }
+
+    @Test
+    public void TestSameAsScan() {
+        Random r = new Random(1);
+        String[] segments = { "a", "ab", "b", "abc", "/" };
+        var list = new ContextList();
+        List<HttpContextImpl> contexts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String path = randomPath(r, segments);
+            var existing = contexts.stream().filter(c -> c.getPath().equals(path)).findFirst();
+            if (existing.isPresent()) {
+                list.remove(existing.get());
+                contexts.remove(existing.get());
+            } else {
+                var ctx = context("http", path);
+                list.add(ctx);
+                contexts.add(ctx);
+            }
+            String request = randomPath(r, segments);
+            HttpContextImpl expected = null;
+            for (var ctx : contexts) {
+                if (request.startsWith(ctx.getPath()) && (expected == null || ctx.getPath().length() > expected.getPath().length())) {
+                    expected = ctx;
+                }
+            }
+            assertSame(list.findContext("http", request), expected, request);
+        }
+        assertEquals(list.size(), contexts.size());
+    }
+
+    private static String randomPath(Random r, String[] segments) {
+        StringBuilder sb = new StringBuilder("/");
+        int n = r.nextInt(5);
+        for (int i = 0; i < n; i++) {
+            sb.append(segments[r.nextInt(segments.length)]);
+        }
+        return sb.toString();
+    }
+}
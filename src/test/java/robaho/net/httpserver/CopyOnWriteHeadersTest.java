@@ -0,0 +1,77 @@
+package robaho.net.httpserver;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.Headers;
+
+public class CopyOnWriteHeadersTest {
+    @Test
+    public void TestCopiedOnWrite() {
+        var parsed = new OptimizedHeaders();
+        parsed.add("Host", "localhost");
+        parsed.add("Accept", "a");
+        parsed.add("Accept", "b");
+        parsed.add("X-custom", "1");
+
+        var view = new CopyOnWriteHeaders(parsed);
+        assertEquals(view.size(), 3);
+        assertEquals(view.getFirst("host"), "localhost");
+        assertEquals(view.get("Accept"), List.of("a", "b"));
+
+        view.add("Accept", "c");
+        view.set("Host", "other");
+        view.remove("X-custom");
+        view.add("X-new", "2");
+
+        assertEquals(view.get("Accept"), List.of("a", "b", "c"));
+        assertEquals(view.getFirst("Host"), "other");
+        assertFalse(view.containsKey("X-custom"));
+        assertTrue(view.containsKey("X-new"));
+
+        // the parsed headers are unchanged
+        assertEquals(parsed.get("Accept"), List.of("a", "b"));
+        assertEquals(parsed.getFirst("Host"), "localhost");
+        assertEquals(parsed.getFirst("X-custom"), "1");
+        assertFalse(parsed.containsKey("X-new"));
+    }
+
+    @Test
+    public void TestReadViewsDoNotModifyParsed() {
+        var parsed = new OptimizedHeaders();
+        parsed.add("Accept", "a");
+        parsed.add("Accept", "b");
+        parsed.add("Host", "localhost");
+
+        var view = new CopyOnWriteHeaders(parsed);
+        assertThrows(UnsupportedOperationException.class, () -> view.get("Accept").add("b"));
+        assertThrows(UnsupportedOperationException.class, () -> view.keySet().remove("Host"));
+        assertThrows(UnsupportedOperationException.class, () -> view.forEach((k, v) -> v.clear()));
+
+        // the entries are copied before they are returned
+        view.entrySet().stream().filter(e -> e.getKey().equals("Accept")).forEach(e -> e.getValue().add("c"));
+        assertEquals(view.get("Accept"), List.of("a", "b", "c"));
+        assertEquals(parsed.get("Accept"), List.of("a", "b"));
+    }
+
+    @Test
+    public void TestEquality() {
+        var parsed = new OptimizedHeaders();
+        parsed.add("Accept", "a");
+        var expected = new Headers();
+        expected.add("Accept", "a");
+
+        var view = new CopyOnWriteHeaders(parsed);
+        assertEquals(view, new CopyOnWriteHeaders(parsed));
+        assertTrue(view.equals(expected));
+        assertEquals(view.hashCode(), expected.hashCode());
+
+        view.add("Accept", "b");
+        assertFalse(view.equals(expected));
+    }
+}
@@ -0,0 +1,48 @@
+package robaho.net.httpserver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.Test;
+
+public class IdleConnectionsTest {
+    @Test
+    public void TestEvictsLeastRecentlyUsed() throws IOException {
+        try (var ss = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+            testEviction(ss);
+        }
+    }
+
+    private static HttpConnection connect(ServerSocket ss) throws IOException {
+        return new HttpConnection(new Socket(ss.getInetAddress(), ss.getLocalPort()));
+    }
+
+    private void testEviction(ServerSocket ss) throws IOException {
+        var idle = new IdleConnections(2);
+        var c1 = connect(ss);
+        var c2 = connect(ss);
+        var c3 = connect(ss);
+        var c4 = connect(ss);
+
+        assertNull(idle.add(c1));
+        assertNull(idle.add(c2));
+        // already idle, so does not change the order
+        assertNull(idle.add(c1));
+        assertSame(idle.add(c3), c1);
+        assertFalse(c1.idle);
+        assertEquals(idle.size(), 2);
+
+        // c2 becomes active and then idle again, so c3 is now the eldest
+        idle.remove(c2);
+        assertEquals(idle.size(), 1);
+        assertNull(idle.add(c2));
+        assertSame(idle.add(c4), c3);
+        assertEquals(idle.size(), 2);
+    }
+}
@@ -0,0 +1,113 @@
+package robaho.net.httpserver;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+public class OpenAddressIntMapTest {
+
+    @Test
+    public void TestPutGetRemove() {
+        var map = new OpenAddressIntMap<String>(4);
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(3, "b"));
+        assertEquals(map.put(1, "c"), "a");
+        assertEquals(map.get(1), "c");
+        assertEquals(map.size(), 2);
+        assertEquals(map.remove(1), "c");
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(map.get(3), "b");
+        // a null value removes the key
+        assertEquals(map.put(3, null), "b");
+        assertEquals(map.size(), 0);
+    }
+
+    @Test
+    public void TestMatchesHashMap() {
+        var random = new Random(1);
+        var map = new OpenAddressIntMap<Integer>(8);
+        var expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 20_000; i++) {
+            // a small key range so probe sequences collide and removals shift entries
+            int key = random.nextInt(64);
+            if (random.nextBoolean()) {
+                assertEquals(map.put(key, i), expected.put(key, i));
+            } else {
+                assertEquals(map.remove(key), expected.remove(key));
+            }
+            assertEquals(map.size(), expected.size());
+        }
+        for (int key = 0; key < 64; key++) {
+            assertEquals(map.get(key), expected.get(key));
+        }
+    }
+
+    /** the stream pattern of a long lived connection, sequential odd ids with a bounded number open */
+    @Test
+    public void TestSequentialStreams() {
+        sequentialStreams(100_000);
+    }
+
+    /** 10M streams on one connection, the capacity must stay bounded by the open streams */
+    @Test(groups = "long")
+    public void TestSequentialStreamsLong() {
+        sequentialStreams(10_000_000);
+    }
+
+    private static void sequentialStreams(int streams) {
+        var map = new OpenAddressIntMap<Object>(16);
+        Object stream = new Object();
+        int open = 100;
+        for (int i = 0; i < streams; i++) {
+            int id = i * 2 + 1;
+            map.put(id, stream);
+            if (i >= open) {
+                assertTrue(map.remove(id - open * 2) == stream);
+            }
+        }
+        assertEquals(map.size(), open);
+        assertTrue(map.capacity() <= 256, "capacity " + map.capacity());
+    }
+
+    @Test
+    public void TestConcurrentReads() throws InterruptedException {
+        var map = new OpenAddressIntMap<Integer>(16);
+        // keys that are always present must always be found, even while other keys are moved by removals
+        for (int key = 0; key < 32; key++) {
+            map.put(key * 2 + 1, key);
+        }
+        var done = new AtomicBoolean();
+        var misses = new AtomicInteger();
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (!done.get()) {
+                    for (int key = 0; key < 32; key++) {
+                        Integer value = map.get(key * 2 + 1);
+                        if (value == null || value != key) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = 0; i < 200_000; i++) {
+            int id = 65 + (i % 64) * 2;
+            map.put(id, i);
+            map.remove(id);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(misses.get(), 0);
+    }
+}
@@ -0,0 +1,59 @@
+package robaho.net.httpserver;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+public class OptimizedHeadersTest {
+    @Test
+    public void TestWellKnownAndOther() {
+        var headers = new OptimizedHeaders();
+        headers.add("content-TYPE", "text/plain");
+        headers.add("X-Custom", "a");
+        headers.add("Accept", "1");
+        headers.add("ACCEPT", "2");
+
+        assertEquals(headers.size(), 3);
+        assertEquals(headers.getFirst("Content-Type"), "text/plain");
+        assertEquals(headers.get("accept"), List.of("1", "2"));
+        assertEquals(headers.getFirst("x-custom"), "a");
+        assertTrue(headers.containsKey("CONTENT-TYPE"));
+
+        Map<String, List<String>> all = new HashMap<>();
+        headers.forEach(all::put);
+        assertEquals(all, Map.of("Content-type", List.of("text/plain"), "X-custom", List.of("a"), "Accept", List.of("1", "2")));
+
+        assertEquals(headers.remove("content-type"), List.of("text/plain"));
+        assertFalse(headers.containsKey("Content-type"));
+        assertEquals(headers.size(), 2);
+
+        headers.set("Host", "localhost");
+        assertEquals(headers.getFirst("host"), "localhost");
+        headers.clear();
+        assertTrue(headers.isEmpty());
+        assertNull(headers.getFirst("Host"));
+    }
+
+    @Test
+    public void TestResolveFromBytes() {
+        byte[] buf = "xxcontent-LENGTH: 10".getBytes();
+        int index = WellKnownHeaders.index(buf, 2, 16);
+        assertSame(WellKnownHeaders.NAMES[index], "Content-length");
+        assertEquals(WellKnownHeaders.index("Content-length"), index);
+        assertEquals(WellKnownHeaders.index(buf, 2, 15), -1);
+        assertEquals(WellKnownHeaders.index("X-custom"), -1);
+        for (int i = 0; i < WellKnownHeaders.COUNT; i++) {
+            String name = WellKnownHeaders.NAMES[i];
+            assertEquals(WellKnownHeaders.index(name), i);
+            byte[] upper = name.toUpperCase().getBytes();
+            assertEquals(WellKnownHeaders.index(upper, 0, upper.length), i);
+        }
+    }
+}
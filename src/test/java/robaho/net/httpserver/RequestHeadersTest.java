@@ -2,10 +2,13 @@ package robaho.net.httpserver;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import org.testng.annotations.Test;
 
@@ -74,4 +77,92 @@ public class RequestHeadersTest {
         assertTrue("GET blah".contentEquals(r.requestLine()));
         assertEquals(r.headers().get("KEY"), List.of("VAL", "VAL2", "VAL3"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void TestRequestLineParts() throws IOException {
+        String request = "\r\nGET /path?q=1 HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        var is = new ByteArrayInputStream(request.getBytes());
+        var os = new ByteArrayOutputStream();
+
+        Request r = new Request(is,os);
+        assertEquals(r.method(),"GET");
+        assertEquals(r.target(),"/path?q=1");
+        assertEquals(r.version(),"HTTP/1.1");
+        assertEquals(r.requestLine(),"GET /path?q=1 HTTP/1.1");
+        assertEquals(r.headers().getFirst("host"),"localhost");
+    }
+
+    @Test
+    public void TestMalformedRequestLine() throws IOException {
+        String request = "GET\r\n\r\n";
+        var is = new ByteArrayInputStream(request.getBytes());
+        var os = new ByteArrayOutputStream();
+
+        Request r = new Request(is,os);
+        assertEquals(r.method(),null);
+        assertEquals(r.requestLine(),"GET");
+    }
+
+    @Test
+    public void TestHeadersSpanningReads() throws IOException {
+        // a long header larger than the buffer, delivered one byte at a time
+        String longValue = "x".repeat(5000);
+        String request = "GET / HTTP/1.1\r\nCONTENT-TYPE: text/plain\r\nLong: "+longValue+"\r\n\r\nBody";
+        InputStream is = new FilterInputStream(new ByteArrayInputStream(request.getBytes())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        var os = new ByteArrayOutputStream();
+
+        Request r = new Request(is,os);
+        assertEquals(r.requestLine(),"GET / HTTP/1.1");
+        assertEquals(r.headers().getFirst("Content-type"),"text/plain");
+        assertEquals(r.headers().getFirst("Long"),longValue);
+        assertEquals(new String(r.inputStream().readAllBytes()),"Body");
+        assertFalse(r.headersTooLarge());
+    }
+
+    @Test
+    public void TestTooManyHeaders() throws IOException {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i <= ServerConfig.getMaxReqHeaders(); i++) {
+            request.append("Key").append(i).append(": value\r\n");
+        }
+        request.append("\r\n");
+        var is = new ByteArrayInputStream(request.toString().getBytes());
+        var os = new ByteArrayOutputStream();
+
+        Request r = new Request(is,os);
+        r.headers();
+        assertTrue(r.headersTooLarge());
+        assertEquals(r.headers().size(), ServerConfig.getMaxReqHeaders());
+    }
+
+    @Test
+    public void TestHeaderTooLarge() throws IOException {
+        // the line is never terminated, parsing must stop once the budget is exceeded rather than buffer it all
+        String request = "GET / HTTP/1.1\r\nHost: localhost\r\nLong: "+"x".repeat(ServerConfig.getMaxReqHeaderSize() * 2);
+        var is = new ByteArrayInputStream(request.getBytes());
+        var os = new ByteArrayOutputStream();
+
+        Request r = new Request(is,os);
+        r.headers();
+        assertTrue(r.headersTooLarge());
+        assertTrue(is.available() > 0);
+    }
+
+    @Test
+    public void TestRequestLineTooLong() throws IOException {
+        // the request line is never terminated, it must not be buffered without bound
+        String request = "GET /"+"x".repeat(ServerConfig.getMaxReqHeaderSize() * 4);
+        var is = new ByteArrayInputStream(request.getBytes());
+        var os = new ByteArrayOutputStream();
+
+        Request r = new Request(is,os);
+        assertTrue(r.requestLineTooLong());
+        assertEquals(r.method(), null);
+        assertTrue(is.available() > 0);
+    }
+}
@@ -0,0 +1,46 @@
+package robaho.net.httpserver;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.expectThrows;
+import org.testng.annotations.Test;
+
+public class RequestTargetTest {
+    @Test
+    public void TestSameAsURI() throws URISyntaxException {
+        String[] targets = {
+            "/", "/a/b/c", "/a?", "/a?x=1&y=%20z", "/a;p=1/b?q=[1]", "/a%20b?x", "/a#frag",
+            "/\u00e9t\u00e9", "*", "http://host:80/a/b?x=1", "/a?b?c", "/a//b/./../c"
+        };
+        for (String s : targets) {
+            RequestTarget target = RequestTarget.parse(s);
+            URI uri = new URI(s);
+            assertEquals(target.path(), uri.getPath() == null ? "/" : uri.getPath(), s);
+            assertEquals(target.rawQuery(), uri.getRawQuery(), s);
+            assertEquals(target.uri(), uri, s);
+            assertEquals(target.toString(), s);
+        }
+    }
+
+    @Test
+    public void TestInvalid() {
+        for (String s : new String[] { "/a b", "/a?x=%2", "/a?x=%zz", "/a|b", "/a\"b" }) {
+            expectThrows(URISyntaxException.class, () -> RequestTarget.parse(s));
+        }
+    }
+
+    @Test
+    public void TestHttp2() throws URISyntaxException {
+        RequestTarget target = RequestTarget.parse("https", "localhost:8443", "/a/b?x=1");
+        assertEquals(target.path(), "/a/b");
+        assertEquals(target.rawQuery(), "x=1");
+        assertEquals(target.uri(), new URI("https://localhost:8443/a/b?x=1"));
+
+        target = RequestTarget.parse("http", "localhost", "/a");
+        assertNull(target.rawQuery());
+        assertEquals(target.uri().getHost(), "localhost");
+    }
+}
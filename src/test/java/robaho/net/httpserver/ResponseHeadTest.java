@@ -0,0 +1,49 @@
+package robaho.net.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.Headers;
+
+public class ResponseHeadTest {
+    @Test
+    public void TestWrite() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var os = new NoSyncBufferedOutputStream(bytes);
+        String date = ActivityTimer.dateAndTime();
+        String large = "x".repeat(3000);
+
+        var headers = new Headers();
+        headers.set("Date", date);
+        headers.set("Content-length", "10");
+        headers.add("X-custom", "a");
+        headers.add("X-custom", "\u20ac");
+        headers.set("X-large", large);
+
+        ResponseHead.writeStatusLine(200, os);
+        ResponseHead.writeHeaders(headers, os);
+        os.flush();
+
+        StringBuilder expected = new StringBuilder("HTTP/1.1 200 OK\r\n");
+        headers.forEach((k, v) -> v.forEach(val -> expected.append(k).append(": ").append(val.equals("\u20ac") ? "?" : val).append("\r\n")));
+        expected.append("\r\n");
+        assertEquals(bytes.toString(StandardCharsets.ISO_8859_1), expected.toString());
+    }
+
+    @Test
+    public void TestStatusLines() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var os = new NoSyncBufferedOutputStream(bytes);
+        ResponseHead.writeStatusLine(101, os);
+        ResponseHead.writeStatusLine(404, os);
+        ResponseHead.writeStatusLine(299, os);
+        ResponseHead.writeStatusLine(1000, os);
+        os.flush();
+        assertEquals(bytes.toString(StandardCharsets.ISO_8859_1),
+                "HTTP/1.1 101 Switching Protocols\r\nHTTP/1.1 404 Not Found\r\nHTTP/1.1 299 \r\nHTTP/1.1 1000 \r\n");
+    }
+}
@@ -19,4 +19,17 @@ public class StringUtilsTest {
         assertFalse(Utils.containsIgnoreCase("Keep-alive, upgrde","Upgrade"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void TestIndexOf() {
+        byte[] buf = "0123456789abcdef0123\r\n".getBytes();
+        for (int i = 0; i < buf.length; i++) {
+            assertEquals(Utils.indexOf(buf, 0, buf.length, buf[i]), new String(buf).indexOf(buf[i]));
+        }
+        assertEquals(Utils.indexOf(buf, 11, buf.length, (byte) '1'), 17);
+        assertEquals(Utils.indexOf(buf, 0, 16, (byte) '\n'), -1);
+        assertEquals(Utils.indexOf(buf, 5, 5, (byte) '5'), -1);
+        byte[] high = new byte[] { (byte) 0x80, (byte) 0xFF, 1, 2, 3, 4, 5, 6, 7, (byte) 0x0A };
+        assertEquals(Utils.indexOf(high, 0, high.length, (byte) 0x0A), 9);
+        assertEquals(Utils.indexOf(high, 0, high.length, (byte) 0xFF), 1);
+    }
+}
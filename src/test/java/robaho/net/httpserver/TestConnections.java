@@ -0,0 +1,11 @@
+package robaho.net.httpserver;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/** creates connections for tests in other packages */
+public class TestConnections {
+    public static HttpConnection open(Socket socket) throws IOException {
+        return new HttpConnection(socket);
+    }
+}
@@ -0,0 +1,69 @@
+package robaho.net.httpserver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+public class TimingWheelTest {
+    private static final System.Logger logger = System.getLogger("robaho.net.httpserver");
+
+    @Test
+    public void TestExpiresInOrder() throws InterruptedException {
+        var wheel = new TimingWheel(logger, "test-wheel", 1);
+        wheel.start();
+        try {
+            var latch = new CountDownLatch(2);
+            var order = new StringBuffer();
+            // the later timeout is beyond the first level so it must cascade
+            var t1 = wheel.newTimeout(() -> { order.append("b"); latch.countDown(); });
+            var t2 = wheel.newTimeout(() -> { order.append("a"); latch.countDown(); });
+            t1.schedule(150);
+            t2.schedule(20);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(order.toString(), "ab");
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void TestCancel() throws InterruptedException {
+        var wheel = new TimingWheel(logger, "test-wheel", 1);
+        wheel.start();
+        try {
+            var count = new AtomicInteger();
+            var latch = new CountDownLatch(1);
+            var cancelled = wheel.newTimeout(count::incrementAndGet);
+            cancelled.schedule(10);
+            cancelled.cancel();
+            wheel.newTimeout(latch::countDown).schedule(50);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(count.get(), 0);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void TestScheduleBefore() throws InterruptedException {
+        var wheel = new TimingWheel(logger, "test-wheel", 1);
+        wheel.start();
+        try {
+            var fired = new CountDownLatch(1);
+            var timeout = wheel.newTimeout(fired::countDown);
+            long start = System.nanoTime();
+            timeout.schedule(5000);
+            timeout.scheduleBefore(10);
+            // a later deadline does not delay an earlier one
+            timeout.scheduleBefore(10000);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        } finally {
+            wheel.stop();
+        }
+    }
+}
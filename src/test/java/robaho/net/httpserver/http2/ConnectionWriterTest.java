@@ -0,0 +1,201 @@
+package robaho.net.httpserver.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.Test;
+
+import robaho.net.httpserver.http2.frame.FrameFlag;
+
+public class ConnectionWriterTest {
+
+    /** queue the frames from another thread while the writer is blocked, and return the payloads in written order */
+    private static String write(ConnectionWriter.StreamQueue[] streams, String frames) throws Exception {
+        var bos = new ByteArrayOutputStream();
+        var stats = new HTTP2Stats();
+        var writer = new ConnectionWriter(bos, stats);
+        var queued = new CountDownLatch(1);
+
+        Thread producer = new Thread(() -> {
+            try {
+                // each frame is a stream index and a payload character
+                for (int i = 0; i < frames.length(); i += 2) {
+                    int stream = frames.charAt(i) - '0';
+                    byte[] payload = new byte[]{(byte) frames.charAt(i + 1)};
+                    writer.writeData(streams[stream], stream * 2 + 1, FrameFlag.NONE, payload, 0, 1, false);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                queued.countDown();
+            }
+        });
+        writer.write(os -> {
+            producer.start();
+            try {
+                queued.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, true);
+
+        byte[] written = bos.toByteArray();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < written.length; i += 10) {
+            sb.append((char) written[i + 9]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void TestUrgency() throws Exception {
+        var streams = new ConnectionWriter.StreamQueue[]{
+            new ConnectionWriter.StreamQueue(new Priority(7, false)),
+            new ConnectionWriter.StreamQueue(new Priority(0, false)),
+            new ConnectionWriter.StreamQueue(Priority.DEFAULT)};
+        assertEquals(write(streams, "0a0b2c1d1e"), "decab");
+    }
+
+    @Test
+    public void TestIncremental() throws Exception {
+        var streams = new ConnectionWriter.StreamQueue[]{
+            new ConnectionWriter.StreamQueue(new Priority(3, true)),
+            new ConnectionWriter.StreamQueue(new Priority(3, true))};
+        assertEquals(write(streams, "0a0b0c1d1e1f"), "adbecf");
+    }
+
+    @Test
+    public void TestNonIncremental() throws Exception {
+        var streams = new ConnectionWriter.StreamQueue[]{
+            new ConnectionWriter.StreamQueue(Priority.DEFAULT),
+            new ConnectionWriter.StreamQueue(Priority.DEFAULT)};
+        assertEquals(write(streams, "0a1d0b1e0c1f"), "abcdef");
+    }
+
+    @Test
+    public void TestControlWriterHandsOffData() throws Exception {
+        var bos = new ByteArrayOutputStream();
+        var tasks = new ArrayList<Runnable>();
+        var writer = new ConnectionWriter(bos, new HTTP2Stats(), tasks::add);
+        var stream = new ConnectionWriter.StreamQueue(Priority.DEFAULT);
+        // DATA queued while another thread holds the lock
+        writer.write(os -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        writer.writeData(stream, 1, FrameFlag.NONE, new byte[1], 0, 1, false);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.start();
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, true);
+        // the control frame writer only wrote a few DATA frames
+        assertEquals(bos.size(), 4 * 10);
+        assertEquals(tasks.size(), 1);
+        tasks.get(0).run();
+        assertEquals(bos.size(), 10 * 10);
+    }
+
+    @Test
+    public void TestStats() throws Exception {
+        var stats = new HTTP2Stats();
+        var writer = new ConnectionWriter(new ByteArrayOutputStream(), stats);
+        writer.writeData(new ConnectionWriter.StreamQueue(new Priority(1, false)), 1, FrameFlag.NONE, new byte[100], 0, 100, true);
+        assertEquals(stats.dataBytesSent[1].get(), 100);
+        assertEquals(stats.dataBytesSent[3].get(), 0);
+    }
+
+    @Test
+    public void TestResetDropsQueuedData() throws Exception {
+        var bos = new ByteArrayOutputStream();
+        var writer = new ConnectionWriter(bos, new HTTP2Stats());
+        var stream = new ConnectionWriter.StreamQueue(Priority.DEFAULT);
+        // DATA queued while another thread holds the lock, then the stream is reset
+        writer.write(os -> {
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5; i++) {
+                        writer.writeData(stream, 1, FrameFlag.NONE, new byte[1], 0, 1, false);
+                    }
+                    writer.reset(stream, out -> out.write('R'));
+                    writer.writeData(stream, 1, FrameFlag.NONE, new byte[1], 0, 1, false);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.start();
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, true);
+        // only the reset is written
+        assertEquals(bos.toByteArray(), new byte[]{'R'});
+    }
+
+    @Test
+    public void TestQueuedDataBounded() throws Exception {
+        var bos = new ByteArrayOutputStream();
+        var writer = new ConnectionWriter(bos, new HTTP2Stats());
+        var stream = new ConnectionWriter.StreamQueue(Priority.DEFAULT);
+        var release = new CountDownLatch(1);
+        var holding = new CountDownLatch(1);
+        // a write blocked in the socket, e.g. a peer that stopped reading
+        Thread blocked = new Thread(() -> {
+            try {
+                writer.write(os -> {
+                    holding.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }, true);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        blocked.start();
+        holding.await();
+
+        int chunk = 64 * 1024;
+        int chunks = 2 * (int) (ConnectionWriter.MAX_QUEUED_DATA_BYTES / chunk);
+        var written = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < chunks; i++) {
+                    writer.writeData(stream, 1, FrameFlag.NONE, new byte[chunk], 0, chunk, false);
+                    written.incrementAndGet();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // the writer waits for the lock once the limit is queued
+        assertEquals(producer.getState(), Thread.State.WAITING);
+        assertEquals(written.get(), chunks / 2);
+
+        release.countDown();
+        producer.join();
+        blocked.join();
+        assertEquals(written.get(), chunks);
+        assertEquals(bos.size(), chunks * (chunk + 9));
+    }
+}
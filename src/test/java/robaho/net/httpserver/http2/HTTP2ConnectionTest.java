@@ -0,0 +1,251 @@
+package robaho.net.httpserver.http2;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.Headers;
+
+import robaho.net.httpserver.ServerConfig;
+import robaho.net.httpserver.TestConnections;
+import robaho.net.httpserver.http2.frame.FrameFlag;
+import robaho.net.httpserver.http2.frame.FrameFlag.FlagSet;
+import robaho.net.httpserver.http2.frame.FrameHeader;
+import robaho.net.httpserver.http2.frame.FrameType;
+import robaho.net.httpserver.http2.frame.ResetStreamFrame;
+
+public class HTTP2ConnectionTest {
+
+    @Test
+    public void TestPush() throws Exception {
+        var paths = new CopyOnWriteArrayList<String>();
+        try (var loopback = new Loopback((stream, in, out) -> {
+            String path = stream.getRequestHeaders().getFirst(":path");
+            paths.add(path);
+            if (!"/pushed".equals(path)) {
+                Headers promised = new Headers();
+                promised.set(":method", "GET");
+                promised.set(":scheme", "http");
+                promised.set(":authority", "localhost");
+                promised.set(":path", "/pushed");
+                assertTrue(stream.push(promised));
+            }
+            stream.getResponseHeaders().set(":status", "200");
+            out.close();
+        })) {
+            loopback.writeHeaders(1, true);
+            // the pushed stream is removed once its response completes, so both streams end
+            awaitTrue(() -> loopback.ended(1) && loopback.ended(2));
+            awaitTrue(() -> loopback.connection.activeStreams() == 0);
+            assertEquals(paths.size(), 2);
+            assertTrue(paths.contains("/pushed"));
+            assertTrue(loopback.frames.stream().anyMatch(h -> h.getType() == FrameType.PUSH_PROMISE && h.getStreamIdentifier() == 1));
+        }
+    }
+
+    /**
+     * the stream table of a connection, streams that complete while others stay open are removed, and the open streams
+     * are still found by their DATA frames after the removals shifted entries
+     */
+    @Test
+    public void TestStreamChurn() throws Exception {
+        int live = 32;
+        int churn = 2000;
+        var received = ConcurrentHashMap.<String>newKeySet();
+        try (var loopback = new Loopback((stream, in, out) -> {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                received.add(new String(body, StandardCharsets.US_ASCII));
+            }
+            stream.getResponseHeaders().set(":status", "200");
+            out.close();
+        })) {
+            for (int i = 0; i < live; i++) {
+                loopback.writeHeaders(i * 2 + 1, false);
+            }
+            for (int i = live; i < live + churn; i++) {
+                loopback.writeHeaders(i * 2 + 1, true);
+            }
+            awaitTrue(() -> loopback.connection.activeStreams() == live);
+
+            Set<String> expected = new HashSet<>();
+            for (int i = 0; i < live; i++) {
+                String id = Integer.toString(i * 2 + 1);
+                expected.add(id);
+                loopback.writeData(i * 2 + 1, id.getBytes(StandardCharsets.US_ASCII), true);
+            }
+            awaitTrue(() -> loopback.connection.activeStreams() == 0);
+            assertEquals(received, expected);
+        }
+    }
+
+    /** a client that cancels streams after their responses completed is not treated as a rapid reset */
+    @Test
+    public void TestResetOfCompletedStreams() throws Exception {
+        int streams = ServerConfig.http2MaxResetStreams() + 100;
+        try (var loopback = new Loopback((stream, in, out) -> {
+            stream.getResponseHeaders().set(":status", "200");
+            out.close();
+        })) {
+            for (int i = 0; i < streams; i++) {
+                loopback.writeHeaders(i * 2 + 1, true);
+            }
+            awaitTrue(() -> loopback.ended(streams * 2 - 1) && loopback.connection.activeStreams() == 0);
+            for (int i = 0; i < streams; i++) {
+                loopback.writeReset(i * 2 + 1, HTTP2ErrorCode.CANCEL);
+            }
+            // a PING round trip shows the resets were processed
+            loopback.writePing();
+            awaitTrue(() -> loopback.received(FrameType.PING));
+            assertFalse(loopback.received(FrameType.GOAWAY));
+        }
+    }
+
+    /** resetting streams while their handlers are running is limited, CVE-2023-44487 */
+    @Test
+    public void TestRapidReset() throws Exception {
+        var release = new CountDownLatch(1);
+        try (var loopback = new Loopback((stream, in, out) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // the stream was reset
+            }
+        })) {
+            try {
+                for (int i = 0; i < ServerConfig.http2MaxResetStreams() + 1; i++) {
+                    loopback.writeHeaders(i * 2 + 1, true);
+                    loopback.writeReset(i * 2 + 1, HTTP2ErrorCode.CANCEL);
+                }
+                awaitTrue(() -> loopback.received(FrameType.GOAWAY));
+            } finally {
+                // the handlers must complete before the connection executor is closed
+                release.countDown();
+            }
+        }
+    }
+
+    /** a connection to an HTTP2Connection over a loopback socket, the frame headers received by the client are recorded */
+    static class Loopback implements AutoCloseable {
+        final List<FrameHeader> frames = new CopyOnWriteArrayList<>();
+        final HTTP2Connection connection;
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final ServerSocket server;
+        private final Socket client;
+        private final Socket accepted;
+        private final OutputStream os;
+
+        interface Handler {
+            void handle(HTTP2Stream stream, InputStream in, OutputStream out) throws IOException;
+        }
+
+        Loopback(Handler handler) throws IOException {
+            server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            client = new Socket(server.getInetAddress(), server.getLocalPort());
+            accepted = server.accept();
+            os = client.getOutputStream();
+            connection = new HTTP2Connection(TestConnections.open(accepted), new HTTP2Stats(), accepted.getInputStream(), accepted.getOutputStream(), new HTTP2Connection.StreamHandler() {
+                @Override
+                public void handleStream(HTTP2Stream stream, InputStream in, OutputStream out) throws IOException {
+                    handler.handle(stream, in, out);
+                }
+                @Override
+                public Executor getExecutor() {
+                    return executor;
+                }
+            });
+            executor.execute(() -> {
+                try {
+                    connection.handle();
+                } catch (Exception ignore) {
+                    // the client closed the connection
+                }
+            });
+            executor.execute(() -> {
+                try {
+                    var in = new DataInputStream(client.getInputStream());
+                    byte[] header = new byte[9];
+                    while (true) {
+                        in.readFully(header);
+                        FrameHeader frame = FrameHeader.Parse(header);
+                        in.skipNBytes(frame.getLength());
+                        frames.add(frame);
+                    }
+                } catch (Exception ignore) {
+                }
+            });
+        }
+
+        /** write a request HEADERS frame for POST / using static table entries only */
+        void writeHeaders(int streamId, boolean endStream) throws IOException {
+            byte[] block = {(byte) 0x83, (byte) 0x84, (byte) 0x86};
+            FlagSet flags = endStream ? FlagSet.of(FrameFlag.END_HEADERS, FrameFlag.END_STREAM) : FlagSet.of(FrameFlag.END_HEADERS);
+            os.write(FrameHeader.encode(block.length, FrameType.HEADERS, flags, streamId));
+            os.write(block);
+            os.flush();
+        }
+
+        void writeReset(int streamId, HTTP2ErrorCode errorCode) throws IOException {
+            os.write(new ResetStreamFrame(errorCode, streamId).encode());
+            os.flush();
+        }
+
+        void writePing() throws IOException {
+            os.write(FrameHeader.encode(8, FrameType.PING, FrameFlag.NONE, 0));
+            os.write(new byte[8]);
+            os.flush();
+        }
+
+        boolean received(FrameType type) {
+            return frames.stream().anyMatch(h -> h.getType() == type);
+        }
+
+        void writeData(int streamId, byte[] payload, boolean endStream) throws IOException {
+            os.write(FrameHeader.encode(payload.length, FrameType.DATA, endStream ? FlagSet.of(FrameFlag.END_STREAM) : FrameFlag.NONE, streamId));
+            os.write(payload);
+            os.flush();
+        }
+
+        /** @return true if the client received the end of the stream */
+        boolean ended(int streamId) {
+            return frames.stream().anyMatch(h -> h.getStreamIdentifier() == streamId && h.getFlags().contains(FrameFlag.END_STREAM));
+        }
+
+        @Override
+        public void close() throws IOException {
+            client.close();
+            accepted.close();
+            server.close();
+            connection.close();
+            executor.close();
+        }
+    }
+
+    static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,24 @@
+package robaho.net.httpserver.http2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.Test;
+
+public class PriorityTest {
+    @Test
+    public void TestParse() {
+        assertSame(Priority.parse(null, Priority.DEFAULT), Priority.DEFAULT);
+        assertSame(Priority.parse("u=3", Priority.DEFAULT), Priority.DEFAULT);
+        assertEquals(Priority.parse("u=0", Priority.DEFAULT), new Priority(0, false));
+        assertEquals(Priority.parse("u=5, i", Priority.DEFAULT), new Priority(5, true));
+        assertEquals(Priority.parse("i=?1", Priority.DEFAULT), new Priority(3, true));
+        assertEquals(Priority.parse(" u=1 ;x=y , i=?0", new Priority(6, true)), new Priority(1, false));
+    }
+
+    @Test
+    public void TestInvalidIgnored() {
+        assertEquals(Priority.parse("u=8, i=1", Priority.DEFAULT), Priority.DEFAULT);
+        assertEquals(Priority.parse("u=-1, foo, bar=baz", Priority.DEFAULT), Priority.DEFAULT);
+        assertEquals(Priority.parse("u=2, u=x", Priority.DEFAULT), new Priority(2, false));
+    }
+}
@@ -0,0 +1,36 @@
+package robaho.net.httpserver.http2;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+public class RateLimitTest {
+    @Test
+    public void TestLimit() {
+        var limit = new RateLimit(3, 1000, 0);
+        assertTrue(limit.acquire(1));
+        assertTrue(limit.acquire(2));
+        assertTrue(limit.acquire(3));
+        assertFalse(limit.acquire(4));
+    }
+
+    @Test
+    public void TestWindowReset() {
+        var limit = new RateLimit(2, 1000, 0);
+        assertTrue(limit.acquire(10));
+        assertTrue(limit.acquire(20));
+        assertFalse(limit.acquire(999));
+        // a new window starts with the first event after the window elapsed
+        assertTrue(limit.acquire(1000));
+        assertTrue(limit.acquire(1999));
+        assertFalse(limit.acquire(1999));
+    }
+
+    @Test
+    public void TestNoLimit() {
+        var limit = new RateLimit(-1, 1000, 0);
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(limit.acquire(i));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package robaho.net.httpserver.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+import robaho.net.httpserver.http2.frame.DataFrame;
+import robaho.net.httpserver.http2.frame.FrameFlag.FlagSet;
+import robaho.net.httpserver.http2.frame.FrameHeader;
+import robaho.net.httpserver.http2.frame.FrameType;
+
+public class ReceiveBufferTest {
+    private static DataFrame frame(byte[] body) {
+        return new DataFrame(new FrameHeader(body.length, FrameType.DATA, FlagSet.of(), 1), body);
+    }
+
+    private static byte[] bytes(int start, int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte)(start + i);
+        }
+        return b;
+    }
+
+    @Test
+    public void TestReadAndCoalesce() throws IOException {
+        var buffer = new ReceiveBuffer(16, 1024);
+        // small frames are appended to a chunk, large frames queued as is
+        assertTrue(buffer.offer(frame(bytes(0, 3))));
+        assertTrue(buffer.offer(frame(bytes(3, 4))));
+        assertTrue(buffer.offer(frame(bytes(7, 10))));
+        assertTrue(buffer.offer(frame(bytes(17, 1))));
+        assertEquals(buffer.available(), 18);
+        buffer.finish();
+
+        byte[] b = new byte[5];
+        assertTrue(buffer.await());
+        assertEquals(buffer.read(b, 0, 5), 5);
+        assertEquals(b, bytes(0, 5));
+        var out = new ByteArrayOutputStream();
+        assertEquals(buffer.transferTo(out), 13);
+        assertEquals(out.toByteArray(), bytes(5, 13));
+        assertFalse(buffer.await());
+    }
+
+    @Test
+    public void TestWindowExceeded() {
+        var buffer = new ReceiveBuffer(16, 64);
+        int offered = 0;
+        // a compliant peer sends at most 64 bytes, the bound allows for the worst case of alternating frame sizes
+        while (buffer.offer(frame(bytes(0, 8))) && buffer.offer(frame(bytes(0, 1)))) {
+            offered += 9;
+        }
+        assertTrue(offered >= 64);
+    }
+
+    @Test
+    public void TestConcurrent() throws Exception {
+        var buffer = new ReceiveBuffer(16384, 1024 * 1024);
+        int total = 32 * 1024 * 1024;
+        var failure = new AtomicReference<Throwable>();
+        var consumed = new AtomicLong();
+        var producer = new Thread(() -> {
+            var random = new Random(1);
+            int sent = 0;
+            while (sent < total) {
+                int length = Math.min(total - sent, random.nextBoolean() ? random.nextInt(100) + 1 : 16384);
+                if (!buffer.offer(frame(bytes(sent, length)))) {
+                    failure.set(new IllegalStateException("buffer full"));
+                    break;
+                }
+                sent += length;
+                // stay within the window
+                while (sent - consumed.get() > 512 * 1024) {
+                    Thread.onSpinWait();
+                }
+            }
+            buffer.finish();
+        });
+        producer.start();
+        byte[] b = new byte[8192];
+        long read = 0;
+        while (buffer.await()) {
+            int n = buffer.read(b, 0, b.length);
+            for (int i = 0; i < n; i++) {
+                if (b[i] != (byte)(read + i)) {
+                    throw new AssertionError("unexpected byte at " + (read + i));
+                }
+            }
+            read += n;
+            consumed.set(read);
+        }
+        producer.join();
+        assertEquals(failure.get(), null);
+        assertEquals(read, total);
+    }
+}
@@ -0,0 +1,61 @@
+package robaho.net.httpserver.http2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+public class WindowTunerTest {
+    private static final long RTT = 100_000_000; // 100 ms
+
+    /** the peer sends a full window of data per round trip, so a sample is the window size */
+    private static boolean roundTrip(WindowTuner tuner, long[] now, int received) {
+        assertTrue(tuner.dataReceived(16384, now[0]));
+        tuner.dataReceived(received - 16384, now[0] + RTT / 2);
+        now[0] += RTT;
+        return tuner.pingAcknowledged(now[0]);
+    }
+
+    @Test
+    public void TestGrowsToMaximum() {
+        var tuner = new WindowTuner(65535, 65535, 1024 * 1024);
+        long[] now = {1};
+        int rounds = 0;
+        while (tuner.streamWindow() < 1024 * 1024) {
+            assertTrue(roundTrip(tuner, now, tuner.streamWindow()), "round " + rounds);
+            assertTrue(rounds++ < 10);
+        }
+        assertEquals(tuner.connectionWindow(), 1024 * 1024);
+        assertEquals(tuner.rttMillis(), 100);
+        // no more samples once the maximum is reached
+        assertFalse(tuner.dataReceived(16384, now[0]));
+    }
+
+    @Test
+    public void TestBandwidthLimited() {
+        var tuner = new WindowTuner(65535, 65535, 1024 * 1024);
+        long[] now = {1};
+        // less than the window is received per round trip, so the window is not the limit
+        assertFalse(roundTrip(tuner, now, 32768));
+        assertFalse(roundTrip(tuner, now, 32768));
+        assertEquals(tuner.streamWindow(), 65535);
+    }
+
+    @Test
+    public void TestSinglePingOutstanding() {
+        var tuner = new WindowTuner(65535, 65535, 1024 * 1024);
+        assertTrue(tuner.dataReceived(100, 1));
+        assertFalse(tuner.dataReceived(100, 2));
+        assertFalse(tuner.pingAcknowledged(3));
+        assertFalse(tuner.pingAcknowledged(4));
+        assertTrue(tuner.dataReceived(100, 5));
+    }
+
+    @Test
+    public void TestDisabled() {
+        var tuner = new WindowTuner(1024 * 1024, 65535, 65535);
+        assertFalse(tuner.dataReceived(16384, 1));
+        assertEquals(tuner.connectionWindow(), 1024 * 1024);
+        assertEquals(tuner.streamWindow(), 65535);
+    }
+}
@@ -0,0 +1,88 @@
+package robaho.net.httpserver.http2.frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.expectThrows;
+import org.testng.annotations.Test;
+
+import robaho.net.httpserver.http2.HTTP2ErrorCode;
+import robaho.net.httpserver.http2.HTTP2Exception;
+import robaho.net.httpserver.http2.frame.FrameFlag.FlagSet;
+
+public class FrameReaderTest {
+    private static final int MAX_FRAME_SIZE = 16384;
+
+    private static void frame(ByteArrayOutputStream bos, FrameType type, FlagSet flags, int streamId, byte[] body) throws IOException {
+        FrameHeader.writeTo(bos, body.length, type, flags, streamId);
+        bos.write(body);
+    }
+
+    private static byte[] data(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    @Test
+    public void TestPooledBuffers() throws Exception {
+        var bos = new ByteArrayOutputStream();
+        frame(bos, FrameType.DATA, FrameFlag.NONE, 1, data(MAX_FRAME_SIZE, 1));
+        frame(bos, FrameType.DATA, FrameFlag.NONE, 1, data(MAX_FRAME_SIZE, 2));
+        frame(bos, FrameType.DATA, FrameFlag.NONE, 1, data(10, 3));
+        var reader = new FrameReader(new ByteArrayInputStream(bos.toByteArray()), MAX_FRAME_SIZE, 4);
+
+        DataFrame first = (DataFrame) reader.read();
+        assertEquals(first.length, MAX_FRAME_SIZE);
+        assertEquals(first.body[0], 1);
+        first.release();
+        assertEquals(reader.pooledBuffers(), 1);
+
+        DataFrame second = (DataFrame) reader.read();
+        // the released buffer is reused
+        assertSame(second.body, first.body);
+        assertEquals(second.body[second.offset], 2);
+        assertEquals(reader.pooledBuffers(), 0);
+
+        // small frames are not pooled
+        DataFrame small = (DataFrame) reader.read();
+        assertEquals(small.body.length, 10);
+        small.release();
+        assertEquals(reader.pooledBuffers(), 0);
+
+        expectThrows(EOFException.class, reader::read);
+    }
+
+    @Test
+    public void TestPadding() throws Exception {
+        var bos = new ByteArrayOutputStream();
+        byte[] body = new byte[1 + 5 + 3];
+        body[0] = 3;
+        System.arraycopy("hello".getBytes(), 0, body, 1, 5);
+        frame(bos, FrameType.DATA, FlagSet.of(FrameFlag.PADDED), 1, body);
+        frame(bos, FrameType.DATA, FlagSet.of(FrameFlag.PADDED), 1, new byte[]{5, 0, 0});
+        var reader = new FrameReader(new ByteArrayInputStream(bos.toByteArray()), MAX_FRAME_SIZE, 4);
+
+        DataFrame frame = (DataFrame) reader.read();
+        assertEquals(new String(frame.body, frame.offset, frame.length), "hello");
+        expectThrows(HTTP2Exception.class, reader::read);
+    }
+
+    @Test
+    public void TestControlFrames() throws Exception {
+        var bos = new ByteArrayOutputStream();
+        new WindowUpdateFrame(3, 1000).writeTo(bos);
+        frame(bos, FrameType.DATA, FrameFlag.NONE, 1, data(MAX_FRAME_SIZE + 1, 0));
+        var reader = new FrameReader(new ByteArrayInputStream(bos.toByteArray()), MAX_FRAME_SIZE, 4);
+
+        WindowUpdateFrame update = (WindowUpdateFrame) reader.read();
+        assertEquals(update.getHeader().getStreamIdentifier(), 3);
+        assertEquals(update.getWindowSizeIncrement(), 1000);
+        assertEquals(expectThrows(HTTP2Exception.class, reader::read).getErrorCode(), HTTP2ErrorCode.FRAME_SIZE_ERROR);
+    }
+}
@@ -0,0 +1,58 @@
+package robaho.net.httpserver.http2.hpack;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertThrows;
+import org.testng.annotations.Test;
+
+import robaho.net.httpserver.http2.HTTP2Exception;
+
+public class DynamicTableTest {
+    private static HTTP2HeaderField field(int i) {
+        // each entry is 10 + 6 + 32 = 48 octets
+        return new HTTP2HeaderField("x-name-" + String.format("%03d", i), "value" + (i % 10));
+    }
+
+    @Test
+    public void TestEvictBySize() {
+        var table = new DynamicTable(4096);
+        for (int i = 0; i < 1000; i++) {
+            table.add(field(i));
+        }
+        assertEquals(table.length(), 4096 / 48);
+        assertEquals(table.size(), table.length() * 48);
+        assertEquals(table.get(1).name, "x-name-999");
+        assertEquals(table.get(table.length()).name, "x-name-" + (1000 - table.length()));
+        assertNull(table.get(table.length() + 1));
+        assertNull(table.get(0));
+    }
+
+    @Test
+    public void TestSizeUpdate() {
+        var table = new DynamicTable(4096);
+        for (int i = 0; i < 10; i++) {
+            table.add(field(i));
+        }
+        table.setMaxSize(100);
+        assertEquals(table.length(), 2);
+        assertEquals(table.get(1).name, "x-name-009");
+        table.setMaxSize(0);
+        assertEquals(table.length(), 0);
+        table.add(field(1));
+        assertEquals(table.length(), 0);
+        assertThrows(IllegalArgumentException.class, () -> table.setMaxSize(4097));
+    }
+
+    @Test
+    public void TestDecoderSizeUpdateLimit() throws HTTP2Exception {
+        var context = new HPackContext(256);
+        // literal with incremental indexing, new name "a", value "b"
+        byte[] block = {0x40, 1, 'a', 1, 'b'};
+        context.decodeFieldSegments(block);
+        assertEquals(context.getHeaderField(62).value, "b");
+        // size update to 256 is allowed, 257 is not
+        context.decodeFieldSegments(new byte[]{0x3f, (byte)((256 - 31 - 128) | 0x80), 1});
+        assertThrows(HTTP2Exception.class, () -> context.decodeFieldSegments(new byte[]{0x3f, (byte)((257 - 31 - 128) | 0x80), 1}));
+        assertNull(context.getHeaderField(0));
+    }
+}
@@ -0,0 +1,115 @@
+package robaho.net.httpserver.http2.hpack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.Headers;
+
+import robaho.net.httpserver.HeaderBudget;
+import robaho.net.httpserver.http2.HTTP2Exception;
+import robaho.net.httpserver.http2.HTTP2Stats;
+
+public class HPackEncoderTest {
+    private static final int FRAME_HEADER_SIZE = 9;
+
+    private static byte[] encode(HPackEncoder encoder, Headers headers) {
+        byte[] frame = encoder.encodeHeaderFrame(headers, 1, false);
+        assertEquals(frame.length - FRAME_HEADER_SIZE, ((frame[0] & 0xFF) << 16) | ((frame[1] & 0xFF) << 8) | (frame[2] & 0xFF));
+        return Arrays.copyOfRange(frame, FRAME_HEADER_SIZE, frame.length);
+    }
+
+    private static Headers response() {
+        var headers = new Headers();
+        headers.set(":status", "200");
+        headers.set("Content-type", "text/plain");
+        headers.set("Server", "robaho");
+        headers.set("X-custom", "some value");
+        headers.set("Content-length", "1234");
+        return headers;
+    }
+
+    private static Set<String> fields(List<HTTP2HeaderField> fields) {
+        return fields.stream().map(HTTP2HeaderField::toString).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void TestRoundTrip() throws IOException, HTTP2Exception {
+        for (boolean huffman : new boolean[]{false, true}) {
+            var stats = new HTTP2Stats();
+            var encoder = new HPackEncoder(stats, huffman);
+            var decoder = new HPackContext();
+            Set<String> expected = Set.of(":status: 200", "content-type: text/plain", "server: robaho", "x-custom: some value", "content-length: 1234");
+
+            byte[] first = encode(encoder, response());
+            assertEquals(fields(decoder.decodeFieldSegments(first)), expected);
+
+            byte[] second = encode(encoder, response());
+            assertEquals(fields(decoder.decodeFieldSegments(second)), expected);
+            assertTrue(second.length < first.length);
+            assertTrue(stats.headerBytesRaw.get() > stats.headerBytesEncoded.get());
+        }
+    }
+
+    @Test
+    public void TestTableSizeUpdate() throws IOException, HTTP2Exception {
+        var encoder = new HPackEncoder(new HTTP2Stats(), true);
+        encode(encoder, response());
+        encoder.setMaxTableSize(0);
+        byte[] block = encode(encoder, response());
+        // dynamic table size update to 0 at the start of the block
+        assertEquals(block[0], 0x20);
+        var decoder = new HPackContext();
+        assertEquals(decoder.decodeFieldSegments(block).size(), 5);
+    }
+
+    @Test
+    public void TestPushPromise() throws IOException, HTTP2Exception {
+        var encoder = new HPackEncoder(new HTTP2Stats(), true);
+        var headers = new Headers();
+        headers.set(":method", "GET");
+        headers.set(":scheme", "https");
+        headers.set(":authority", "www.example.com");
+        headers.set(":path", "/style.css");
+        headers.set("Accept", "text/css");
+        byte[] frame = encoder.encodePushPromiseFrame(headers, 3, 2);
+        // type PUSH_PROMISE, END_HEADERS, on stream 3 promising stream 2
+        assertEquals(frame[3], 0x5);
+        assertEquals(frame[4], 0x4);
+        assertEquals(((frame[0] & 0xFF) << 16) | ((frame[1] & 0xFF) << 8) | (frame[2] & 0xFF), frame.length - FRAME_HEADER_SIZE);
+        assertEquals(Arrays.copyOfRange(frame, 5, 9), new byte[]{0, 0, 0, 3});
+        assertEquals(Arrays.copyOfRange(frame, 9, 13), new byte[]{0, 0, 0, 2});
+        var fields = new HPackContext().decodeFieldSegments(Arrays.copyOfRange(frame, 13, frame.length));
+        assertEquals(fields.stream().map(HTTP2HeaderField::toString).toList(),
+            List.of(":method: GET", ":scheme: https", ":authority: www.example.com", ":path: /style.css", "accept: text/css"));
+    }
+
+    @Test
+    public void TestHeaderBudget() throws IOException, HTTP2Exception {
+        var encoder = new HPackEncoder(new HTTP2Stats(), true);
+        var decoder = new HPackContext();
+        var budget = new HeaderBudget(2, 4096);
+        assertEquals(decoder.decodeFieldSegments(encode(encoder, response()), budget).size(), 2);
+        assertTrue(budget.exceeded());
+        // the fields over the budget were still added to the dynamic table
+        assertEquals(decoder.decodeFieldSegments(encode(encoder, response())).size(), 5);
+    }
+
+    @Test
+    public void TestHuffman() throws IOException, HTTP2Exception {
+        String value = "www.example.com";
+        var bos = new ByteArrayOutputStream();
+        Huffman.encode(value, bos);
+        // RFC 7541 C.4.1
+        assertEquals(bos.toByteArray(), new byte[]{(byte)0xf1, (byte)0xe3, (byte)0xc2, (byte)0xe5, (byte)0xf2, 0x3a, 0x6b, (byte)0xa0, (byte)0xab, (byte)0x90, (byte)0xf4, (byte)0xff});
+        assertEquals(Huffman.encodedLength(value), 12);
+        assertEquals(Huffman.decode(bos.toByteArray()), value);
+    }
+}
@@ -0,0 +1,62 @@
+package robaho.net.httpserver.http2.hpack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+import org.testng.annotations.Test;
+
+import robaho.net.httpserver.http2.HTTP2Exception;
+
+public class HuffmanTest {
+    private static byte[] encode(String value) throws IOException {
+        var bos = new ByteArrayOutputStream();
+        Huffman.encode(value, bos);
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void TestAllSymbols() throws IOException, HTTP2Exception {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < 256; c++) {
+            sb.append(c);
+        }
+        String all = sb.toString();
+        assertEquals(Huffman.decode(encode(all)), all);
+
+        Random r = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            sb.setLength(0);
+            for (int j = r.nextInt(50); j > 0; j--) {
+                sb.append((char) r.nextInt(256));
+            }
+            String value = sb.toString();
+            byte[] encoded = encode(value);
+            assertEquals(encoded.length, Huffman.encodedLength(value));
+            assertEquals(Huffman.decode(encoded), value);
+        }
+        assertEquals(Huffman.decode(new byte[0]), "");
+    }
+
+    @Test
+    public void TestOffset() throws IOException, HTTP2Exception {
+        byte[] encoded = encode("no-cache");
+        byte[] buffer = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, buffer, 2, encoded.length);
+        assertEquals(Huffman.decode(buffer, 2, encoded.length), "no-cache");
+    }
+
+    @Test
+    public void TestInvalid() throws HTTP2Exception {
+        // EOS is 30 one bits
+        assertThrows(HTTP2Exception.class, () -> Huffman.decode(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff}));
+        // 'a' is 00011, padded with zeros
+        assertThrows(HTTP2Exception.class, () -> Huffman.decode(new byte[]{0x18}));
+        // 'a' followed by more than 7 bits of padding
+        assertThrows(HTTP2Exception.class, () -> Huffman.decode(new byte[]{0x1f, (byte) 0xff}));
+        // 'a' correctly padded
+        assertEquals(Huffman.decode(new byte[]{0x1f}), "a");
+    }
+}